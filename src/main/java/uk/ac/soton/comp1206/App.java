@@ -7,6 +7,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.BackgroundIo;
+import uk.ac.soton.comp1206.utility.Metrics;
+import uk.ac.soton.comp1206.utility.ScoreRepository;
 
 /**
  * JavaFX Application class
@@ -45,6 +48,9 @@ public class App extends Application {
         instance = this;
         this.stage = stage;
 
+        //Read the local scores in the background while the menu opens
+        ScoreRepository.load();
+
         //Open game window
         openGame();
     }
@@ -67,6 +73,8 @@ public class App extends Application {
      */
     public void shutdown() {
         logger.info("Shutting down");
+        Metrics.dump();
+        BackgroundIo.flush();
         System.exit(0);
     }
 
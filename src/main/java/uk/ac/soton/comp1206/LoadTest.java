@@ -0,0 +1,309 @@
+package uk.ac.soton.comp1206;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.ac.soton.comp1206.game.GameClock;
+import uk.ac.soton.comp1206.game.GameCommand;
+import uk.ac.soton.comp1206.game.MultiplayerGame;
+import uk.ac.soton.comp1206.game.SystemClock;
+import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.LocalServer;
+import uk.ac.soton.comp1206.network.Message;
+import uk.ac.soton.comp1206.utility.LatencyHistogram;
+
+/**
+ * Headless load test for multiplayer. Starts a LocalServer and many simulated players, each with its own Communicator
+ * and MultiplayerGame. Players meet in channels, the host starts the game, then everyone plays with the GameBot and
+ * chats until the time is up. Reports the message rate, the PIECE round trip and the client CPU time per player.
+ *
+ * Usage: LoadTest [players] [players per channel] [seconds] [think time in ms] [server url]
+ * Without a server url, an in-process LocalServer is used.
+ */
+public class LoadTest {
+
+    private static final Logger logger = LogManager.getLogger(LoadTest.class);
+
+    /**
+     * One in this many moves is followed by a chat message
+     */
+    private static final int CHAT_EVERY = 10;
+
+    private final int players;
+    private final int channelSize;
+    private final long duration;
+    private final long thinkTime;
+    private final String server;
+
+    /**
+     * Runs every player's bot moves and chat, in place of a thread per player
+     */
+    private final ScheduledExecutorService bots;
+
+    /**
+     * One clock for every game's piece timer
+     */
+    private final SystemClock clock = new SystemClock();
+
+    /**
+     * The shared clock as each game sees it. A game stops its clock when cleaned up, which must not stop the timers
+     * of every other game, so only the load test stops the real one.
+     */
+    private final GameClock timers = new GameClock() {
+        @Override
+        public long now() {
+            return clock.now();
+        }
+
+        @Override
+        public Timeout schedule(Runnable task, long delay) {
+            return clock.schedule(task, delay);
+        }
+
+        @Override
+        public void stop() {
+        }
+    };
+
+    /**
+     * The time from sending PIECE to receiving the piece, over all players
+     */
+    private final LatencyHistogram pieceLatency = new LatencyHistogram("ms");
+
+    private final AtomicInteger moves = new AtomicInteger();
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+
+    private final List<Player> all = new ArrayList<>();
+
+    /**
+     * A Communicator which remembers when each PIECE was written to the socket, so the round trip leaves out the time
+     * spent waiting for the next flush. PIECE is never coalesced, so the answers arrive in the same order.
+     */
+    private static class TimedCommunicator extends Communicator {
+        final ConcurrentLinkedQueue<Long> pieceRequests = new ConcurrentLinkedQueue<>();
+
+        TimedCommunicator(String server) {
+            //There is no UI thread, so UI listeners run straight away
+            super(server, Runnable::run);
+        }
+
+        @Override
+        protected void writing(String message) {
+            if (message.equals("PIECE")) pieceRequests.add(System.nanoTime());
+        }
+    }
+
+    /**
+     * A simulated player
+     */
+    private class Player {
+        final String name;
+        final String channel;
+        final boolean host;
+        final TimedCommunicator communicator;
+        final MultiplayerGame game;
+        int pieces;
+
+        /**
+         * The bot's moves, scheduled once the first two pieces arrive
+         */
+        volatile ScheduledFuture<?> moving;
+
+        Player(int index) {
+            name = "bot" + index;
+            channel = "load" + (index / channelSize);
+            host = index % channelSize == 0;
+            communicator = new TimedCommunicator(server);
+
+            //There is no UI thread, so listeners run on the game loop, and there is nothing to play sounds on
+            game = new MultiplayerGame(5, 5, communicator, Executors.newSingleThreadExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "game-loop-" + name);
+                thread.setDaemon(true);
+                return thread;
+            }), Runnable::run, timers) {
+                @Override
+                protected void playAudio(String file) {
+                }
+            };
+        }
+
+        /**
+         * Join the channel, creating it first if this is the host
+         * @param expected how many players the host waits for before starting, unused by the others
+         */
+        void join(int expected) {
+            communicator.subscribe(Message.Users.class, (users) -> {
+                if (host && users.getUsers().size() == expected) communicator.send("START");
+            });
+            communicator.subscribe(Message.Text.class, (message) -> {
+                if (message.getCommand().equals("START")) start();
+            });
+
+            communicator.send("NICK " + name);
+            communicator.send((host ? "CREATE " : "JOIN ") + channel);
+        }
+
+        /**
+         * Start the game. The game subscribes to pieces first, so they reach the game loop before the next move does.
+         */
+        void start() {
+            game.addGameOverListener(this::over);
+            game.start();
+            started.incrementAndGet();
+
+            communicator.subscribe(Message.Piece.class, (piece) -> {
+                Long sent = communicator.pieceRequests.poll();
+                if (sent != null) {
+                    synchronized (pieceLatency) { pieceLatency.record((System.nanoTime() - sent) / 1000000); }
+                }
+
+                //The game needs its first two pieces before the bot can play
+                if (++pieces == 2) {
+                    moving = bots.scheduleWithFixedDelay(this::move, thinkTime, thinkTime, TimeUnit.MILLISECONDS);
+                }
+            });
+        }
+
+        /**
+         * Stop playing once out of lives. Cleaning up clears the listeners being called, so it runs afterwards.
+         */
+        void over() {
+            finished.incrementAndGet();
+            if (moving != null) moving.cancel(false);
+            bots.execute(game::cleanUp);
+        }
+
+        /**
+         * Let the bot play the current piece, and sometimes say something
+         */
+        void move() {
+            game.submit(GameCommand.bot());
+            if (moves.incrementAndGet() % CHAT_EVERY == 0) communicator.send("MSG hello from " + name);
+        }
+    }
+
+    /**
+     * Create a load test
+     * @param players the number of players
+     * @param channelSize the number of players per channel
+     * @param duration how long to play for, in milliseconds
+     * @param thinkTime how long each bot waits between moves, in milliseconds
+     * @param server the server to connect to
+     */
+    public LoadTest(int players, int channelSize, long duration, long thinkTime, String server) {
+        this.players = players;
+        this.channelSize = channelSize;
+        this.duration = duration;
+        this.thinkTime = thinkTime;
+        this.server = server;
+
+        bots = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), (runnable) -> {
+            Thread thread = new Thread(runnable, "load-test-bot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run the load test from the command line
+     * @param args players, players per channel, seconds, think time and server, all optional
+     * @throws Exception if the local server cannot start
+     */
+    public static void main(String[] args) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int channelSize = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 30;
+        long thinkTime = args.length > 3 ? Long.parseLong(args[3]) : 250;
+
+        LocalServer localServer = args.length > 4 ? null : new LocalServer(0);
+        String server = localServer == null ? args[4] : localServer.getUrl();
+
+        var test = new LoadTest(players, channelSize, seconds * 1000, thinkTime, server);
+        System.out.println(test.run());
+
+        if (localServer != null) localServer.stop();
+        System.exit(0);
+    }
+
+    /**
+     * Connect every player, play for the duration and report
+     * @return the report
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public String run() throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuBefore = clientCpuTime(threads);
+
+        logger.info("Connecting " + players + " players to " + server);
+        for (int i = 0; i < players; i++) all.add(new Player(i));
+
+        //Hosts go first so the channels exist before anyone joins
+        for (var player : all) {
+            if (player.host) player.join(Math.min(channelSize, players - all.indexOf(player)));
+        }
+        Thread.sleep(500);
+        for (var player : all) {
+            if (!player.host) player.join(0);
+        }
+
+        logger.info("Playing for " + duration + "ms");
+        long start = System.nanoTime();
+        Thread.sleep(duration);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long sent = 0, received = 0, coalesced = 0;
+        for (var player : all) {
+            sent += player.communicator.getMessagesSent();
+            received += player.communicator.getMessagesReceived();
+            coalesced += player.communicator.getMessagesCoalesced();
+        }
+        long cpu = clientCpuTime(threads) - cpuBefore;
+        int live = started.get() - finished.get();
+
+        for (var player : all) {
+            player.game.cleanUp();
+            player.communicator.close();
+        }
+        bots.shutdownNow();
+        clock.stop();
+
+        synchronized (pieceLatency) {
+            return String.format("%d players in %d channels, %d started, %d still playing, %d bot moves in %.1fs%n"
+                    + "messages: %.0f sent/s, %.0f received/s, %d coalesced%n"
+                    + "PIECE round trip: p50 %dms, p90 %dms, p99 %dms, max %dms over %d pieces%n"
+                    + "client CPU: %.2fms per live player per second",
+                    players, (players + channelSize - 1) / channelSize, started.get(), live, moves.get(), seconds,
+                    sent / seconds, received / seconds, coalesced,
+                    pieceLatency.getValueAtPercentile(50), pieceLatency.getValueAtPercentile(90),
+                    pieceLatency.getValueAtPercentile(99), pieceLatency.getMax(), pieceLatency.getCount(),
+                    cpu / 1e6 / Math.max(live, 1) / seconds);
+        }
+    }
+
+    /**
+     * The CPU time of every live thread except the local server's
+     * @param threads the thread bean
+     * @return the total in nanoseconds
+     */
+    private static long clientCpuTime(ThreadMXBean threads) {
+        long total = 0;
+        for (var info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info == null || info.getThreadName().startsWith("local-server")) continue;
+            long time = threads.getThreadCpuTime(info.getThreadId());
+            if (time > 0) total += time;
+        }
+        return total;
+    }
+}
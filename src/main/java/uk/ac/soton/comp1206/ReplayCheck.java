@@ -0,0 +1,68 @@
+package uk.ac.soton.comp1206;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import uk.ac.soton.comp1206.game.Replay;
+import uk.ac.soton.comp1206.game.ReplayPlayer;
+import uk.ac.soton.comp1206.utility.ReplayRepository;
+
+/**
+ * Plays every replay in a folder without rendering and checks each ends on the score and level it was recorded with.
+ * Keep a folder of replays and run this after changing Grid or the scoring rules: any replay that no longer matches
+ * shows the change altered how games play out. Multiplayer replays are skipped, their pieces came from the server.
+ *
+ * Usage: ReplayCheck [folder]
+ * Without a folder, the game's own replays folder is used. Exits with 1 if any replay does not match.
+ */
+public class ReplayCheck {
+
+    /**
+     * Check the replays from the command line
+     * @param args the folder, optional
+     * @throws IOException if the folder cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        Path folder = args.length > 0 ? Path.of(args[0]) : ReplayRepository.REPLAYS;
+
+        List<Path> paths;
+        try (var files = Files.list(folder)) {
+            paths = files.filter((path) -> path.toString().endsWith(".replay")).sorted().collect(Collectors.toList());
+        }
+
+        //Read everything first so only playing is timed
+        var replays = new ArrayList<byte[]>();
+        for (var path : paths) replays.add(Files.readAllBytes(path));
+
+        int matched = 0, skipped = 0;
+        var failures = new ArrayList<String>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < replays.size(); i++) {
+            try {
+                var replay = new Replay(replays.get(i));
+                if (!replay.isPlayable() || !replay.isFinished()) {
+                    skipped++;
+                    continue;
+                }
+
+                var result = ReplayPlayer.verify(replays.get(i));
+                if (result.matches()) matched++;
+                else failures.add(paths.get(i).getFileName() + ": " + result);
+            } catch (IllegalArgumentException e) {
+                failures.add(paths.get(i).getFileName() + ": " + e.getMessage());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (var failure : failures) System.out.println("MISMATCH " + failure);
+        System.out.printf("%d replays: %d matched, %d failed, %d skipped in %.3fs (%.0f games/s)%n", replays.size(),
+                matched, failures.size(), skipped, seconds, (matched + failures.size()) / Math.max(seconds, 1e-9));
+
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+}
@@ -0,0 +1,180 @@
+package uk.ac.soton.comp1206.component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import uk.ac.soton.comp1206.network.BoardSync;
+import uk.ac.soton.comp1206.network.Message;
+
+/**
+ * Shows a small live board for every other player, all drawn on one canvas. Each board is a plain int grid updated
+ * from BOARD messages, and only the cells that changed are repainted.
+ */
+public class OpponentBoards extends Canvas {
+
+	private static final Logger logger = LogManager.getLogger(OpponentBoards.class);
+
+	/**
+	 * The height of the name above each board
+	 */
+	private static final double LABEL = 14;
+
+	/**
+	 * The gap around each board
+	 */
+	private static final double GAP = 8;
+
+	/**
+	 * The board of one player and where it is drawn
+	 */
+	private static class Opponent {
+		final int[][] cells;
+		final int[][] scratch;
+		boolean synced;
+		boolean dead;
+		double x;
+		double y;
+
+		Opponent(int cols, int rows) {
+			cells = new int[cols][rows];
+			scratch = new int[cols][rows];
+		}
+	}
+
+	private final int cols;
+
+	private final int rows;
+
+	/**
+	 * The size of one cell in pixels
+	 */
+	private final double cell;
+
+	/**
+	 * The boards by player, in the order they first appeared
+	 */
+	private final Map<String, Opponent> opponents = new LinkedHashMap<>();
+
+	/**
+	 * Create the canvas for boards of the given size
+	 * @param width the width of the canvas
+	 * @param height the height of the canvas
+	 * @param cols the number of columns of each board
+	 * @param rows the number of rows of each board
+	 * @param cell the size of one cell in pixels
+	 */
+	public OpponentBoards(double width, double height, int cols, int rows, double cell) {
+		super(width, height);
+		this.cols = cols;
+		this.rows = rows;
+		this.cell = cell;
+	}
+
+	/**
+	 * Apply a BOARD message, adding the player if it is new
+	 * @param board the message
+	 */
+	public void update(Message.Board board) {
+		var opponent = opponents.get(board.getPlayer());
+		if (opponent == null) {
+			opponent = new Opponent(cols, rows);
+			opponents.put(board.getPlayer(), opponent);
+			layoutBoards();
+		}
+
+		//Decode into the scratch copy so the changed cells can be found
+		for (var x = 0; x < cols; x++) System.arraycopy(opponent.cells[x], 0, opponent.scratch[x], 0, rows);
+
+		try {
+			if (!BoardSync.decode(board.getBoard(), opponent.scratch, opponent.synced)) return;
+		} catch (RuntimeException e) {
+			logger.error("Bad board from " + board.getPlayer() + ": " + e.getMessage());
+			return;
+		}
+		opponent.synced = true;
+
+		var gc = getGraphicsContext2D();
+		for (var x = 0; x < cols; x++) {
+			for (var y = 0; y < rows; y++) {
+				if (opponent.scratch[x][y] == opponent.cells[x][y]) continue;
+
+				opponent.cells[x][y] = opponent.scratch[x][y];
+				paintCell(gc, opponent, x, y);
+			}
+		}
+	}
+
+	/**
+	 * Grey out the board of a player who has lost
+	 * @param player the player
+	 */
+	public void setDead(String player) {
+		var opponent = opponents.get(player);
+		if (opponent == null || opponent.dead) return;
+
+		opponent.dead = true;
+		paintBoard(getGraphicsContext2D(), player, opponent);
+	}
+
+	/**
+	 * Work out where each board goes, filling rows of boards from the top left, and repaint everything
+	 */
+	private void layoutBoards() {
+		double boardWidth = cols * cell + GAP;
+		double boardHeight = rows * cell + LABEL + GAP;
+		int perRow = Math.max(1, (int) (getWidth() / boardWidth));
+
+		var gc = getGraphicsContext2D();
+		gc.clearRect(0, 0, getWidth(), getHeight());
+
+		int i = 0;
+		for (var entry : opponents.entrySet()) {
+			var opponent = entry.getValue();
+			opponent.x = (i % perRow) * boardWidth;
+			opponent.y = (i / perRow) * boardHeight;
+			paintBoard(gc, entry.getKey(), opponent);
+			i++;
+		}
+	}
+
+	/**
+	 * Paint the name and every cell of one board
+	 */
+	private void paintBoard(GraphicsContext gc, String player, Opponent opponent) {
+		gc.clearRect(opponent.x, opponent.y, cols * cell, rows * cell + LABEL);
+
+		gc.setFont(Font.font(LABEL - 3));
+		gc.setFill(opponent.dead ? Color.GRAY : Color.WHITE);
+		gc.fillText(player, opponent.x, opponent.y + LABEL - 3, cols * cell);
+
+		for (var x = 0; x < cols; x++) {
+			for (var y = 0; y < rows; y++) {
+				paintCell(gc, opponent, x, y);
+			}
+		}
+	}
+
+	/**
+	 * Paint one cell of a board
+	 */
+	private void paintCell(GraphicsContext gc, Opponent opponent, int x, int y) {
+		double left = opponent.x + x * cell;
+		double top = opponent.y + LABEL + y * cell;
+		int value = opponent.cells[x][y];
+
+		gc.clearRect(left, top, cell, cell);
+		if (value <= 0 || value >= GameBlock.COLOURS.length) {
+			gc.setFill(Color.color(0, 0, 0, 0.3));
+		} else {
+			gc.setFill(opponent.dead ? Color.GRAY : GameBlock.COLOURS[value]);
+		}
+		gc.fillRect(left, top, cell - 1, cell - 1);
+	}
+}
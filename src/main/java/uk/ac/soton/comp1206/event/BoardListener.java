@@ -0,0 +1,16 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.network.Message;
+
+/**
+ * Listens to the boards of the other players
+ *
+ */
+public interface BoardListener {
+	
+	/**
+	 * Relay a board update from another player
+	 * @param board The player and their board, as a keyframe or delta
+	 */
+	public void receiveBoard(Message.Board board);
+}
@@ -0,0 +1,15 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.game.GameState;
+
+/**
+ * Listens to new snapshots of the game state. Always called on the UI thread.
+ */
+public interface GameStateListener {
+
+	/**
+	 * Called after the game loop has changed the state of the game
+	 * @param state the new snapshot
+	 */
+	public void stateChanged(GameState state);
+}
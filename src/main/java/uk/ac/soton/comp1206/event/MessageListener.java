@@ -1,5 +1,7 @@
 package uk.ac.soton.comp1206.event;
 
+import uk.ac.soton.comp1206.network.Message;
+
 /**
  * Listens to new messages from the communicator
  *
@@ -10,5 +12,5 @@ public interface MessageListener {
 	 * Relay the message from the communicator
 	 * @param message The message
 	 */
-	public void receiveMessage(String message);
+	public void receiveMessage(Message.Chat message);
 }
@@ -1,10 +1,12 @@
 package uk.ac.soton.comp1206.event;
 
+import uk.ac.soton.comp1206.network.Message;
+
 /**
  * Listens to the score being changed
  *
  */
 public interface PlayersScoreListener {
 
-	public void playerScore(String score);
+	public void playerScore(Message.Scores scores);
 }
@@ -0,0 +1,17 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.network.Message;
+
+/**
+ * Listens to one type of parsed message from the server
+ * @param <T> the type of message
+ */
+public interface ProtocolListener<T extends Message> {
+
+	/**
+	 * Handle a parsed message. Called on the communicator thread when added with Communicator.subscribe, and on the
+	 * communicator's UI executor, the JavaFX thread unless another was given, when added with Communicator.subscribeUi.
+	 * @param message the message
+	 */
+	public void receive(T message);
+}
@@ -0,0 +1,59 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generates pieces in the style of a 7-bag: every piece is put in a bag, the bag is shuffled and the pieces are dealt
+ * one by one. Once the bag is empty it is refilled, so no piece is ever more than two bags away.
+ */
+public class BagPieceGenerator implements PieceGenerator {
+
+	static final String TYPE = "bag";
+
+	private final long seed;
+
+	private final SplittableRandom random;
+
+	/**
+	 * The pieces in the bag
+	 */
+	private final int[] bag = new int[GamePiece.PIECES];
+
+	/**
+	 * The number of pieces dealt from the bag
+	 */
+	private int dealt = GamePiece.PIECES;
+
+	/**
+	 * Create a new generator
+	 * @param seed the seed
+	 */
+	public BagPieceGenerator(long seed) {
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+
+		for (var i = 0; i < bag.length; i++) bag[i] = i;
+	}
+
+	@Override
+	public int next() {
+		if (dealt == bag.length) {
+			//Fisher-Yates shuffle in place
+			for (var i = bag.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int temp = bag[i];
+				bag[i] = bag[j];
+				bag[j] = temp;
+			}
+			dealt = 0;
+		}
+
+		return bag[dealt++];
+	}
+
+	@Override
+	public long getSeed() { return seed; }
+
+	@Override
+	public String getType() { return TYPE; }
+}
@@ -1,30 +1,34 @@
 package uk.ac.soton.comp1206.game;
 
 import java.util.ArrayList;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.scene.input.KeyEvent;
-import javafx.util.Duration;
 import uk.ac.soton.comp1206.component.GameBlock;
 import uk.ac.soton.comp1206.event.BlockMoveListener;
 import uk.ac.soton.comp1206.event.GameOverListener;
+import uk.ac.soton.comp1206.event.GameStateListener;
 import uk.ac.soton.comp1206.event.GameTimerListener;
 import uk.ac.soton.comp1206.event.PieceChangeListener;
 import uk.ac.soton.comp1206.event.ShowModelListener;
+import uk.ac.soton.comp1206.utility.InputLatency;
 import uk.ac.soton.comp1206.utility.Multimedia;
 
 /**
  * The Game class handles the main logic, state and properties of the TetrECS game. Methods to manipulate the game state
  * and to handle actions made by the player should take place inside this class.
+ *
+ * All changes to the game state happen on a single game loop thread. Input, the timer and the network submit
+ * GameCommands to the loop, and the loop publishes immutable GameState snapshots back to the UI thread.
  */
 public class Game {
 
@@ -55,6 +59,31 @@ public class Game {
      */
     protected ArrayList<GameOverListener> gameOverListeners = new ArrayList<GameOverListener>();
     
+    /**
+     * Listeners to new snapshots of the game state
+     */
+    protected ArrayList<GameStateListener> stateListeners = new ArrayList<GameStateListener>();
+    
+    /**
+     * The executor every change to the game state runs on
+     */
+    protected final Executor loop;
+    
+    /**
+     * The executor snapshots and listener calls are published on
+     */
+    protected final Executor ui;
+    
+    /**
+     * Whether the game loop still accepts commands
+     */
+    protected volatile boolean running = true;
+    
+    /**
+     * Whether the game has ended, after which every command is ignored. Only used on the game loop.
+     */
+    protected boolean gameOver;
+    
     /**
      * The current piece
      */
@@ -66,14 +95,19 @@ public class Game {
     public GamePiece nextPiece;
 
     /**
-     * The timer to play a move
+     * The clock used to time each piece
+     */
+    protected final GameClock clock;
+    
+    /**
+     * The timeout for the current piece
      */
-    protected Timer timer;
+    protected GameClock.Timeout timer;
     
     /**
-     * The task executed after the time is off
+     * Counts the timers set, so a timeout from a cancelled timer can be ignored
      */
-    protected TimerTask task;
+    protected int timerGeneration;
     
     /**
      * Number of rows
@@ -103,17 +137,62 @@ public class Game {
     /**
      * The level
      */
-    protected SimpleIntegerProperty level = new SimpleIntegerProperty();
+    protected int level;
     
     /**
      * The amount of lives
      */
-    protected SimpleIntegerProperty lives = new SimpleIntegerProperty();
+    protected int lives;
     
     /**
      * The score
      */
-    protected SimpleIntegerProperty score = new SimpleIntegerProperty();
+    protected int score;
+    
+    /**
+     * The lives at the start of a game
+     */
+    protected static final int LIVES = 3;
+    
+    /**
+     * The number of pieces placed this game
+     */
+    protected int piecesPlaced;
+    
+    /**
+     * The number of rows and columns cleared this game
+     */
+    protected int linesCleared;
+    
+    /**
+     * When this game started, by the game clock
+     */
+    protected long startTime;
+    
+    /**
+     * The outcome, set when the game ends
+     */
+    private volatile GameResult result;
+    
+    /**
+     * Records the moves of this game, or null if it is not recorded
+     */
+    protected ReplayRecorder recorder;
+    
+    /**
+     * The level as displayed by the UI, updated from snapshots
+     */
+    private final SimpleIntegerProperty levelProperty = new SimpleIntegerProperty();
+    
+    /**
+     * The lives as displayed by the UI, updated from snapshots
+     */
+    private final SimpleIntegerProperty livesProperty = new SimpleIntegerProperty();
+    
+    /**
+     * The score as displayed by the UI, updated from snapshots
+     */
+    private final SimpleIntegerProperty scoreProperty = new SimpleIntegerProperty();
     
     /**
      * Temporary score to calculate levels
@@ -130,14 +209,39 @@ public class Game {
      */
     private GameBot gameBot;
     
+    /**
+     * Decides the pieces of this game, seeded once so the game can be reproduced
+     */
+    protected PieceGenerator pieceGenerator = PieceGenerator.uniform(new SplittableRandom().nextLong());
+    
     /**
      * Create a new game with the specified rows and columns. Creates a corresponding grid model.
      * @param cols number of columns
      * @param rows number of rows
      */
     public Game(int cols, int rows) {
+        this(cols, rows, Executors.newSingleThreadExecutor((runnable) -> {
+        	Thread thread = new Thread(runnable, "game-loop");
+        	thread.setDaemon(true);
+        	return thread;
+        }), Platform::runLater, new SystemClock());
+    }
+    
+    /**
+     * Create a new game which runs its loop and publishes its snapshots on the given executors, timing pieces with
+     * the given clock
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param loop the executor all game state changes run on, must run tasks one at a time in order
+     * @param ui the executor snapshots and listener calls are published on
+     * @param clock the clock for the piece timer
+     */
+    public Game(int cols, int rows, Executor loop, Executor ui, GameClock clock) {
         this.cols = cols;
         this.rows = rows;
+        this.loop = loop;
+        this.ui = ui;
+        this.clock = clock;
 
         //Create a new grid model to represent the game state
         this.grid = new Grid(cols,rows);
@@ -148,7 +252,7 @@ public class Game {
      */
     public void start() {
         logger.info("Starting game");
-        initialiseGame();
+        execute(this::initialiseGame);
     }
 
     /**
@@ -158,56 +262,188 @@ public class Game {
         logger.info("Initialising game");
 
         //Set starting values
-        score.set(0);
-        level.set(1);
-        lives.set(3);
-        
-        tempScore = 0;
-        multiplier = 1;
-        
-        xCurrent = 0;
-        yCurrent = 0;
+        resetState();
+        if (recorder != null) recorder.start(this);
         
         //Get pieces
         currentPiece = spawnPiece();
         nextPiece = spawnPiece();
+        
+        publishState();
+        updatePieceListeners();
                 
         //Start timer
-        timer = new Timer();
-        task = new TimerTask() {
-
-			public void run() {
-				gameLoop();
-			}
-        };
         setTimer();
     }
     
+    /**
+     * Set the starting values of the game
+     */
+    protected void resetState() {
+        score = 0;
+        level = 1;
+        lives = LIVES;
+        
+        piecesPlaced = 0;
+        linesCleared = 0;
+        startTime = clock.now();
+        result = null;
+        gameOver = false;
+        
+        tempScore = 0;
+        multiplier = 1;
+        
+        xCurrent = 0;
+        yCurrent = 0;
+    }
+    
+    /**
+     * Run a task on the game loop. Tasks are dropped once the game has been cleaned up.
+     * @param task the task
+     */
+    protected void execute(Runnable task) {
+    	if (!running) return;
+    	
+    	try {
+    		loop.execute(() -> {
+    			if (!running) return;
+    			
+    			try {
+    				task.run();
+    			} catch (Exception e) {
+    				logger.error("Game loop error: " + e.getMessage());
+    				e.printStackTrace();
+    			}
+    		});
+    	} catch (RejectedExecutionException e) {
+    		logger.info("Game loop has stopped");
+    	}
+    }
+    
+    /**
+     * Submit a command to the game loop
+     * @param command the command
+     */
+    public void submit(GameCommand command) {
+    	execute(() -> process(command));
+    }
+    
+    /**
+     * Submit a command caused by the player, measuring how long it takes until its result is on screen
+     * @param command the command
+     * @param source whether it came from the keyboard or the mouse
+     */
+    public void submitInput(GameCommand command, InputLatency.Source source) {
+    	long inputTime = System.nanoTime();
+    	
+    	execute(() -> {
+    		process(command);
+    		publish(() -> InputLatency.applied(source, inputTime));
+    	});
+    }
+    
+    /**
+     * Process a single command. Only called on the game loop. Commands still queued when the game ends are ignored.
+     * @param command the command
+     */
+    protected void process(GameCommand command) {
+    	if (gameOver) return;
+    	
+    	switch (command.getType()) {
+    		case PLACE -> placePiece(command.getX(), command.getY(), false);
+    		case DROP -> placePiece(xCurrent, yCurrent, true);
+    		case MOVE -> { xCurrent += command.getX(); yCurrent += command.getY(); calculateCurrent(); }
+    		case ROTATE -> rotatePiece(command.getX());
+    		case SWAP -> {
+    			if (recorder != null) recorder.swap();
+    			swapPiece();
+    		}
+    		case BOT -> playBot();
+    		case TIMEOUT -> {
+    			if (command.getX() != timerGeneration) return;
+    			if (recorder != null) recorder.timeout();
+    			gameLoop();
+    		}
+    		case END -> endGame();
+    		default -> logger.info("Ignoring command " + command);
+    	}
+    }
+    
+    /**
+     * Publish an update to the UI thread
+     * @param update the update
+     */
+    protected void publish(Runnable update) {
+    	ui.execute(update);
+    }
+    
+    /**
+     * Play a sound on the UI thread
+     * @param file the sound file
+     */
+    protected void playAudio(String file) {
+    	publish(() -> Multimedia.playAudio(file));
+    }
+    
+    /**
+     * Take a snapshot of the game. Should be called on the game loop, or when driving the game directly.
+     * @return the snapshot
+     */
+    public GameState snapshot() {
+    	return new GameState(score, level, lives, multiplier, grid.copyCells(),
+    			currentPiece == null ? null : currentPiece.copy(), nextPiece == null ? null : nextPiece.copy());
+    }
+    
+    /**
+     * Take a snapshot of the game and publish it to the UI thread
+     */
+    protected void publishState() {
+    	var state = snapshot();
+    	
+    	publish(() -> {
+    		scoreProperty.set(state.getScore());
+    		levelProperty.set(state.getLevel());
+    		livesProperty.set(state.getLives());
+    		grid.display(state);
+    		
+    		for (var listener : stateListeners) {
+    			listener.stateChanged(state);
+    		}
+    	});
+    }
+    
     /**
      * Sets the timer for the next piece
      */
     public void setTimer() {
-    	timer.cancel();
-    	timer = new Timer();
-    	task = new TimerTask() {
-
-			public void run() {
-				gameLoop();
-			}
-    		
-    	};
-    	timer.schedule(task, getTimePeriod());
+    	if (timer != null) timer.cancel();
     	
-    	for (var timerListener : timerListeners) {
-    		timerListener.updateTimer(getTimePeriod());
-    	}
+    	//Only the latest timer may time out the current piece
+    	int generation = ++timerGeneration;
+    	long period = getTimePeriod();
+    	timer = clock.schedule(() -> submit(GameCommand.timeout(generation)), period);
+    	
+    	publish(() -> {
+    		for (var timerListener : timerListeners) {
+    			timerListener.updateTimer(period);
+    		}
+    	});
+    }
+    
+    /**
+     * Stop the timer without setting a new one. A timeout it already sent is ignored.
+     */
+    protected void stopTimer() {
+    	if (timer != null) timer.cancel();
+    	timer = null;
+    	timerGeneration++;
     }
     
     /**
      * Get the time left to play a piece
      * @return The time left
      */
-    public long getTimePeriod() { return 12000 - 500*level.get() > 2500 ? 12000 - 500*level.get() : 2500; }
+    public long getTimePeriod() { return 12000 - 500*level > 2500 ? 12000 - 500*level : 2500; }
     
     /**
      * Handles what happens when the time is off
@@ -216,54 +452,121 @@ public class Game {
     	grid.clearData();
 
     	//Lose a life
-    	lives.set(lives.get()-1);
-    	Multimedia.playAudio("lifelose.wav");
+    	lives--;
+    	playAudio("lifelose.wav");
     	
     	//Game over if no lives
-    	if (lives.get() < 0) {
-    		timer.cancel();
-    		
+    	if (lives < 0) {
+    		publishState();
+    		endGame();
+    	} else afterPiece();
+    }
+    
+    /**
+     * Stop the timer and tell the listeners the game is over. Only the first call does anything.
+     */
+    protected void endGame() {
+    	if (gameOver) return;
+    	gameOver = true;
+    	stopTimer();
+    	
+    	result = new GameResult(score, level, LIVES - lives, piecesPlaced, linesCleared, clock.now() - startTime,
+    			getMode(), getSeed(), System.currentTimeMillis());
+    	if (recorder != null) recorder.finish(score, level);
+    	
+    	publish(() -> {
     		for (var listener : gameOverListeners) {
     			listener.gameOver();
     		}
-    	} else afterPiece();
+    	});
     }
     
     /**
-     * Handles the input on the scene 
+     * Handles the input on the scene. Called on the UI thread, turns the key into a command for the game loop.
      * @param key The key pressed
      */
     public void handleInput(KeyEvent key) {
+    	var keyboard = InputLatency.Source.KEYBOARD;
+    	
     	switch(key.getCode()) {
-			case D: xCurrent++; calculateCurrent(); break;
- 			case W: yCurrent--; calculateCurrent(); break;
-	   		case A: xCurrent--; calculateCurrent(); break;
-	   		case S: yCurrent++; calculateCurrent(); break;
-	   		case X: if (grid.canPlayPiece(currentPiece, xCurrent, yCurrent)) {
-	   					grid.playPiece(currentPiece, xCurrent, yCurrent); 
-	   					afterPiece();
-	   				} else { Multimedia.playAudio("fail.wav"); }
-	   				break;
-	   		case R: currentPiece.rotate();
-	   				Multimedia.playAudio("rotate.wav");
-	   				for (var listener : pieceListeners) {
-	   					listener.pieceChange(currentPiece, 0);
-	   				}; break;
-	   		case T: swapPiece(); break;
-	   		case P: for (var listener: modelListeners) listener.showModel(); break;
-	   		case L: playBot(); break;
-	   		case M: for (var listener : gameOverListeners) listener.gameOver(); break;
+			case D: submitInput(GameCommand.move(1, 0), keyboard); break;
+ 			case W: submitInput(GameCommand.move(0, -1), keyboard); break;
+	   		case A: submitInput(GameCommand.move(-1, 0), keyboard); break;
+	   		case S: submitInput(GameCommand.move(0, 1), keyboard); break;
+	   		case X: submitInput(GameCommand.drop(), keyboard); break;
+	   		case R: submitInput(GameCommand.rotate(0), keyboard); break;
+	   		case T: submitInput(GameCommand.swap(), keyboard); break;
+	   		case P: long inputTime = System.nanoTime();
+	   				for (var listener: modelListeners) listener.showModel();
+	   				InputLatency.applied(keyboard, inputTime); break;
+	   		case L: submitInput(GameCommand.bot(), keyboard); break;
+	   		case M: submit(GameCommand.end()); break;
 		}
 
     }
     
+    /**
+     * Place the current piece if it fits
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @param failSound Whether to play a sound if the piece does not fit
+     */
+    protected void placePiece(int x, int y, boolean failSound) {
+    	if (currentPiece == null) return;
+    	
+    	if (grid.canPlayPiece(currentPiece, x, y)) {
+    		grid.playPiece(currentPiece, x, y);
+    		piecesPlaced++;
+    		if (recorder != null) recorder.place(x, y);
+    		afterPiece();
+    	} else if (failSound) playAudio("fail.wav");
+    }
+    
+    /**
+     * Rotate one of the pieces. Code: 0 for current piece, 1 for next piece
+     * @param code The piece to rotate
+     */
+    protected void rotatePiece(int code) {
+    	GamePiece piece = code == 0 ? currentPiece : nextPiece;
+    	if (piece == null) return;
+    	
+    	if (recorder != null) recorder.rotate(code);
+    	piece.rotate();
+    	playAudio("rotate.wav");
+    	
+    	var copy = piece.copy();
+    	publish(() -> {
+    		for (var listener : pieceListeners) {
+    			listener.pieceChange(copy, code);
+    		}
+    	});
+    }
+    
     /**
      * Get the bot to play the next piece for you (loser)
      */
     private void playBot() {
     	if (gameBot == null) gameBot = new GameBot(this);
-    	if (gameBot.think()) Multimedia.playAudio("place.wav");
-    	else Multimedia.playAudio("fail.wav");
+    	if (gameBot.think()) {
+    		piecesPlaced++;
+    		playAudio("place.wav");
+    	} else playAudio("fail.wav");
+    }
+    
+    /**
+     * Play a move chosen by the bot: swap the pieces if asked, rotate the current piece and place it
+     * @param swap whether to swap the current and next piece first
+     * @param rotations how many times to rotate the piece
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    protected void playBotMove(boolean swap, int rotations, int x, int y) {
+    	if (recorder != null) recorder.bot(swap, rotations, x, y);
+    	
+    	if (swap) swapPiece();
+    	currentPiece.rotate(rotations);
+    	grid.playPiece(currentPiece, x, y);
+    	afterPiece();
     }
     
     /**
@@ -275,9 +578,13 @@ public class Game {
     	else if (yCurrent >= grid.getCols()) yCurrent = 0;
     	else if (yCurrent < 0) yCurrent = grid.getCols() - 1;
     	
-    	for (var listener : currentBlockListeners) {
-    		listener.blockMoved(xCurrent, yCurrent);
-    	}
+    	int x = xCurrent;
+    	int y = yCurrent;
+    	publish(() -> {
+    		for (var listener : currentBlockListeners) {
+    			listener.blockMoved(x, y);
+    		}
+    	});
     }
     
     /**
@@ -289,7 +596,7 @@ public class Game {
         int x = gameBlock.getX();
         int y = gameBlock.getY();
 
-        if (grid.canPlayPiece(currentPiece, x, y)) {grid.playPiece(currentPiece, x, y); afterPiece();}
+        submitInput(GameCommand.place(x, y), InputLatency.Source.MOUSE);
     }
 
     /**
@@ -297,7 +604,7 @@ public class Game {
      * @return The next piece that is spawned
      */
     public GamePiece spawnPiece() {
-    	return GamePiece.createPiece(new Random().nextInt(15));
+    	return GamePiece.createPiece(pieceGenerator.next());
     }
     
     /**
@@ -308,7 +615,7 @@ public class Game {
     	currentPiece = nextPiece;
     	nextPiece = temp;
     	
-    	Multimedia.playAudio("rotate.wav");
+    	playAudio("rotate.wav");
     	updatePieceListeners();
     }
     
@@ -319,36 +626,56 @@ public class Game {
     	currentPiece = nextPiece;
     	nextPiece = spawnPiece();
     	
+    	int lines = scorePlacement();
+    	    	
+    	if (lines > 0) playAudio("clear.wav");
+    	playAudio("place.wav");
+    	publishState();
+    	updatePieceListeners();
+    	setTimer();
+    }
+    
+    /**
+     * Add the score for the lines the last piece cleared and update the multiplier and level
+     * @return the number of lines cleared
+     */
+    protected int scorePlacement() {
     	//Get number of lines cleared, calculate number of blocks and get the score out of it
-    	int rowsCleared = grid.getRowsRemoved().size();
-    	int colsCleared = grid.getColsRemoved().size();
+    	int rowsCleared = grid.getRowsCleared();
+    	int colsCleared = grid.getColsCleared();
     	int blocksCleared = rowsCleared*cols + colsCleared*rows - rowsCleared*colsCleared;
     	int newScore = (rowsCleared + colsCleared) * blocksCleared * 10 * multiplier;
     	
-    	score.set(score.get() + newScore);
+    	score += newScore;
     	tempScore += newScore;
+    	linesCleared += rowsCleared + colsCleared;
     	
     	multiplier = rowsCleared + colsCleared > 0 ? multiplier+1: 1;
     	
     	//Update level
     	while (tempScore >= 1000) {
     		tempScore -= 1000;
-    		level.set(level.get()+1);
+    		level++;
     	}
-    	    	
-    	Multimedia.playAudio("place.wav");
-    	updatePieceListeners();
-    	setTimer();
+    	
+    	return rowsCleared + colsCleared;
     }
     
     /**
      * Update side piece listeners. Code: 0 for current piece, 1 for next piece
      */
     protected void updatePieceListeners() {
-    	for (var listener : pieceListeners) {
-    		listener.pieceChange(currentPiece, 0);
-    		listener.pieceChange(nextPiece, 1);
-    	}
+    	if (currentPiece == null || nextPiece == null) return;
+    	
+    	var current = currentPiece.copy();
+    	var next = nextPiece.copy();
+    	
+    	publish(() -> {
+    		for (var listener : pieceListeners) {
+    			listener.pieceChange(current, 0);
+    			listener.pieceChange(next, 1);
+    		}
+    	});
     }
     
     /**
@@ -375,11 +702,67 @@ public class Game {
         return rows;
     }
     
-    public SimpleIntegerProperty getScore() { return score; }
+    /**
+     * Set how the pieces are generated. Must be called before the game starts.
+     * @param pieceGenerator the generator
+     */
+    public void setPieceGenerator(PieceGenerator pieceGenerator) {
+        this.pieceGenerator = pieceGenerator;
+    }
     
-    public SimpleIntegerProperty getLives() { return lives; }
+    /**
+     * Get the generator deciding the pieces of this game
+     * @return the generator
+     */
+    public PieceGenerator getPieceGenerator() {
+        return pieceGenerator;
+    }
+    
+    /**
+     * Record the moves of this game. Must be set before the game starts.
+     * @param recorder the recorder
+     */
+    public void setRecorder(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+    
+    /**
+     * Get the clock timing this game
+     * @return the clock
+     */
+    public GameClock getClock() {
+        return clock;
+    }
+    
+    /**
+     * Get the kind of game, recorded in the game history
+     * @return the mode
+     */
+    public String getMode() {
+        return "challenge";
+    }
+    
+    /**
+     * Get the seed the pieces of this game came from
+     * @return the seed
+     */
+    protected long getSeed() {
+        return pieceGenerator.getSeed();
+    }
+    
+    /**
+     * Get the outcome of the game
+     * @return the result, or null if the game has not ended
+     */
+    public GameResult getResult() {
+        return result;
+    }
     
-    public SimpleIntegerProperty getLevel() { return level; }
+    public SimpleIntegerProperty getScore() { return scoreProperty; }
+    
+    public SimpleIntegerProperty getLives() { return livesProperty; }
+    
+    public SimpleIntegerProperty getLevel() { return levelProperty; }
 
     public void addBlockMoveListener(BlockMoveListener listener) { this.currentBlockListeners.add(listener); }
     
@@ -391,12 +774,17 @@ public class Game {
     
     public void addGameOverListener(GameOverListener listener) { this.gameOverListeners.add(listener); }
     
+    public void addStateListener(GameStateListener listener) { this.stateListeners.add(listener); }
+    
     /**
-     * Cancel the timer and clear all of the listeners
+     * Stop the game loop, cancel the timer and clear all of the listeners
      */
     public void cleanUp() {
-    	timer.cancel();
+    	running = false;
+    	clock.stop();
+    	if (loop instanceof ExecutorService) ((ExecutorService) loop).shutdown();
     	
+    	stateListeners.clear();
     	currentBlockListeners.clear();
     	pieceListeners.clear();
     	timerListeners.clear();
@@ -173,29 +173,15 @@ public class GameBot {
 		//Play the best move and get the next piece
 		if (indexOne == -1 && indexTwo == -1)  { logger.info("No piece to place"); return false;}
 		else if (indexOne == -1) {
-			pieceTwo.rotate(rotationsTwo.get(indexTwo));
-			
-			game.swapPiece();
-			grid.playPiece(pieceTwo, gridXTwo.get(indexTwo), gridYTwo.get(indexTwo));
-			
-			game.afterPiece();
+			game.playBotMove(true, rotationsTwo.get(indexTwo), gridXTwo.get(indexTwo), gridYTwo.get(indexTwo));
 		} else if (indexTwo == -1) {
-			pieceOne.rotate(rotationsOne.get(indexOne));
-			grid.playPiece(pieceOne, gridXOne.get(indexOne), gridYOne.get(indexOne));
-
-			game.afterPiece();
+			game.playBotMove(false, rotationsOne.get(indexOne), gridXOne.get(indexOne), gridYOne.get(indexOne));
 		} else {
 			if (fitnessOne.get(indexOne) > fitnessTwo.get(indexTwo)) {
-				pieceOne.rotate(rotationsOne.get(indexOne));
-				grid.playPiece(pieceOne, gridXOne.get(indexOne), gridYOne.get(indexOne));
+				game.playBotMove(false, rotationsOne.get(indexOne), gridXOne.get(indexOne), gridYOne.get(indexOne));
 			} else {
-				pieceTwo.rotate(rotationsTwo.get(indexTwo));
-				
-				game.swapPiece();
-				grid.playPiece(pieceTwo, gridXTwo.get(indexTwo), gridYTwo.get(indexTwo));
+				game.playBotMove(true, rotationsTwo.get(indexTwo), gridXTwo.get(indexTwo), gridYTwo.get(indexTwo));
 			}
-			
-			game.afterPiece();
 		}
 		
 		//Clear lists
@@ -0,0 +1,38 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * The clock the game uses to time pieces. The real game uses the system clock, while simulations and tests can use a
+ * VirtualClock to make timeouts happen instantly.
+ */
+public interface GameClock {
+
+	/**
+	 * A scheduled task which can be cancelled
+	 */
+	public interface Timeout {
+
+		/**
+		 * Cancel the task if it has not run yet
+		 */
+		public void cancel();
+	}
+
+	/**
+	 * Get the current time of this clock
+	 * @return the time in milliseconds
+	 */
+	public long now();
+
+	/**
+	 * Run a task after the given delay
+	 * @param task the task
+	 * @param delay the delay in milliseconds
+	 * @return the handle to cancel the task
+	 */
+	public Timeout schedule(Runnable task, long delay);
+
+	/**
+	 * Stop the clock, no more tasks will run
+	 */
+	public void stop();
+}
@@ -0,0 +1,143 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A GameCommand is a single request to change the state of a Game. Input, timer and network events are all turned
+ * into commands and handed to the game loop, which processes them one at a time on its own thread.
+ */
+public class GameCommand {
+
+	/**
+	 * The kinds of command the game loop understands
+	 */
+	public enum Type {
+		/** Place the current piece at the given coordinates */
+		PLACE,
+		/** Place the current piece at the keyboard cursor */
+		DROP,
+		/** Move the keyboard cursor by the given offset */
+		MOVE,
+		/** Rotate the current (0) or next (1) piece */
+		ROTATE,
+		/** Swap the current and next piece */
+		SWAP,
+		/** Let the bot play the next move */
+		BOT,
+		/** The timer for the current piece ran out */
+		TIMEOUT,
+		/** A new piece arrived from the server */
+		NETWORK_PIECE,
+		/** The server reported our score */
+		SERVER_SCORE,
+		/** End the game */
+		END
+	}
+
+	/**
+	 * The type of this command
+	 */
+	private final Type type;
+
+	/**
+	 * First argument - X coordinate, X offset, piece code, timer generation or piece value depending on the type
+	 */
+	private final int x;
+
+	/**
+	 * Second argument - Y coordinate or Y offset
+	 */
+	private final int y;
+
+	/**
+	 * Create a new command. Use the factory methods instead.
+	 * @param type the type
+	 * @param x the first argument
+	 * @param y the second argument
+	 */
+	private GameCommand(Type type, int x, int y) {
+		this.type = type;
+		this.x = x;
+		this.y = y;
+	}
+
+	/**
+	 * Place the current piece at the given block
+	 * @param x The X coordinate
+	 * @param y The Y coordinate
+	 * @return the command
+	 */
+	public static GameCommand place(int x, int y) { return new GameCommand(Type.PLACE, x, y); }
+
+	/**
+	 * Place the current piece at the keyboard cursor
+	 * @return the command
+	 */
+	public static GameCommand drop() { return new GameCommand(Type.DROP, 0, 0); }
+
+	/**
+	 * Move the keyboard cursor
+	 * @param dx The X offset
+	 * @param dy The Y offset
+	 * @return the command
+	 */
+	public static GameCommand move(int dx, int dy) { return new GameCommand(Type.MOVE, dx, dy); }
+
+	/**
+	 * Rotate a piece. Code: 0 for current piece, 1 for next piece
+	 * @param code The piece to rotate
+	 * @return the command
+	 */
+	public static GameCommand rotate(int code) { return new GameCommand(Type.ROTATE, code, 0); }
+
+	/**
+	 * Swap current and next piece
+	 * @return the command
+	 */
+	public static GameCommand swap() { return new GameCommand(Type.SWAP, 0, 0); }
+
+	/**
+	 * Let the bot play
+	 * @return the command
+	 */
+	public static GameCommand bot() { return new GameCommand(Type.BOT, 0, 0); }
+
+	/**
+	 * The timer ran out
+	 * @param generation The timer that fired, so stale timeouts can be ignored
+	 * @return the command
+	 */
+	public static GameCommand timeout(int generation) { return new GameCommand(Type.TIMEOUT, generation, 0); }
+
+	/**
+	 * A piece was received from the server
+	 * @param value The piece number
+	 * @return the command
+	 */
+	public static GameCommand networkPiece(int value) { return new GameCommand(Type.NETWORK_PIECE, value, 0); }
+
+	/**
+	 * The server reported our score
+	 * @param score The score the server has
+	 * @return the command
+	 */
+	public static GameCommand serverScore(int score) { return new GameCommand(Type.SERVER_SCORE, score, 0); }
+
+	/**
+	 * End the game
+	 * @return the command
+	 */
+	public static GameCommand end() { return new GameCommand(Type.END, 0, 0); }
+
+	public Type getType() { return type; }
+
+	public int getX() { return x; }
+
+	public int getY() { return y; }
+
+	/**
+	 * Return the string representation of this command
+	 * @return the type and arguments
+	 */
+	public String toString() {
+		return type + " " + x + " " + y;
+	}
+}
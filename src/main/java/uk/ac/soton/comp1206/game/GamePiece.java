@@ -223,6 +223,16 @@ public class GamePiece {
     }
 
 
+    /**
+     * Create a copy of this piece in its current rotation, so it can be handed to another thread
+     * @return the copy
+     */
+    public GamePiece copy() {
+        int[][] copy = new int[blocks.length][];
+        for (int x = 0; x < blocks.length; x++) copy[x] = blocks[x].clone();
+        return new GamePiece(name, copy, value);
+    }
+
     /**
      * Return the string representation of this piece
      * @return the name of this piece
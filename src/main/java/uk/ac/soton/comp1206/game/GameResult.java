@@ -0,0 +1,92 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * The outcome of a finished game, taken on the game loop when the game ends and kept in the local game history.
+ */
+public class GameResult {
+
+	private final int score;
+
+	private final int level;
+
+	/**
+	 * The number of times the timer ran out
+	 */
+	private final int livesUsed;
+
+	private final int pieces;
+
+	/**
+	 * Rows and columns cleared
+	 */
+	private final int lines;
+
+	/**
+	 * How long the game lasted, in milliseconds
+	 */
+	private final long duration;
+
+	/**
+	 * The kind of game, see Game.getMode
+	 */
+	private final String mode;
+
+	/**
+	 * The seed of the piece generator, 0 if the pieces came from the server
+	 */
+	private final long seed;
+
+	/**
+	 * When the game finished, in milliseconds since the epoch
+	 */
+	private final long finished;
+
+	/**
+	 * Create a result
+	 * @param score the final score
+	 * @param level the final level
+	 * @param livesUsed the number of times the timer ran out
+	 * @param pieces the number of pieces placed
+	 * @param lines the number of rows and columns cleared
+	 * @param duration how long the game lasted, in milliseconds
+	 * @param mode the kind of game
+	 * @param seed the seed of the piece generator
+	 * @param finished when the game finished, in milliseconds since the epoch
+	 */
+	public GameResult(int score, int level, int livesUsed, int pieces, int lines, long duration, String mode, long seed,
+			long finished) {
+		this.score = score;
+		this.level = level;
+		this.livesUsed = livesUsed;
+		this.pieces = pieces;
+		this.lines = lines;
+		this.duration = duration;
+		this.mode = mode;
+		this.seed = seed;
+		this.finished = finished;
+	}
+
+	public int getScore() { return score; }
+
+	public int getLevel() { return level; }
+
+	public int getLivesUsed() { return livesUsed; }
+
+	public int getPieces() { return pieces; }
+
+	public int getLines() { return lines; }
+
+	public long getDuration() { return duration; }
+
+	public String getMode() { return mode; }
+
+	public long getSeed() { return seed; }
+
+	public long getFinished() { return finished; }
+
+	@Override
+	public String toString() {
+		return String.format("%s game: score %d, level %d, %d pieces, %d lines, %d lives used, %ds", mode, score, level,
+				pieces, lines, livesUsed, duration / 1000);
+	}
+}
@@ -0,0 +1,72 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * An immutable snapshot of a Game, taken on the game loop and handed to the UI. The UI never reads the live game
+ * state, only the latest snapshot.
+ */
+public class GameState {
+
+	private final int score;
+
+	private final int level;
+
+	private final int lives;
+
+	private final int multiplier;
+
+	/**
+	 * Copy of the grid values, indexed [x][y]
+	 */
+	private final int[][] cells;
+
+	/**
+	 * Copy of the current piece, may be null in multiplayer before the first piece arrives
+	 */
+	private final GamePiece currentPiece;
+
+	/**
+	 * Copy of the next piece, may be null
+	 */
+	private final GamePiece nextPiece;
+
+	/**
+	 * Create a new snapshot. The cells and pieces must already be copies.
+	 * @param score the score
+	 * @param level the level
+	 * @param lives the lives
+	 * @param multiplier the multiplier
+	 * @param cells the grid values
+	 * @param currentPiece the current piece
+	 * @param nextPiece the next piece
+	 */
+	public GameState(int score, int level, int lives, int multiplier, int[][] cells,
+			GamePiece currentPiece, GamePiece nextPiece) {
+		this.score = score;
+		this.level = level;
+		this.lives = lives;
+		this.multiplier = multiplier;
+		this.cells = cells;
+		this.currentPiece = currentPiece;
+		this.nextPiece = nextPiece;
+	}
+
+	public int getScore() { return score; }
+
+	public int getLevel() { return level; }
+
+	public int getLives() { return lives; }
+
+	public int getMultiplier() { return multiplier; }
+
+	/**
+	 * Get the value of a cell in the snapshot
+	 * @param x column
+	 * @param y row
+	 * @return the value
+	 */
+	public int getCell(int x, int y) { return cells[x][y]; }
+
+	public GamePiece getCurrentPiece() { return currentPiece; }
+
+	public GamePiece getNextPiece() { return nextPiece; }
+}
@@ -1,23 +1,18 @@
 package uk.ac.soton.comp1206.game;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.util.Pair;
-import uk.ac.soton.comp1206.utility.Multimedia;
 
 /**
  * The Grid is a model which holds the state of a game board. It is made up of a set of Integer values arranged in a 2D
  * arrow, with rows and columns.
  *
- * Each value inside the Grid is an IntegerProperty can be bound to enable modification and display of the contents of
- * the grid.
+ * The values themselves are held in a plain int array which is only touched by the game loop. Each value also has an
+ * IntegerProperty which can be bound to for display; these are only updated from snapshots on the UI thread.
  *
  * The Grid contains functions related to modifying the model, for example, placing a piece inside the grid.
  *
@@ -38,17 +33,37 @@ public class Grid {
     private final int rows;
 
     /**
-     * The rows to be removed
+     * The largest number of rows or columns, so each line fits in one bit of a mask
+     */
+    public static final int MAX_SIZE = 64;
+
+    /**
+     * Bitmask of the rows removed by the last played piece, bit x set for row x
      */
-	ArrayList<Integer> rowsToRemove;
+	long rowsToRemove;
+	
+	/**
+	 * Bitmask of the cols removed by the last played piece, bit y set for col y
+	 */
+	long colsToRemove;
+	
+	/**
+	 * The number of filled blocks in each row, indexed by x
+	 */
+	private final int[] rowFill;
 	
 	/**
-	 * The cols to be removed
+	 * The number of filled blocks in each col, indexed by y
 	 */
-	ArrayList<Integer> colsToRemove;
+	private final int[] colFill;
 	
     /**
-     * The grid is a 2D arrow with rows and columns of SimpleIntegerProperties.
+     * The values of the grid, owned by the game loop
+     */
+    private final int[][] cells;
+
+    /**
+     * The grid is a 2D arrow with rows and columns of SimpleIntegerProperties, mirroring the cells for display.
      */
     private final SimpleIntegerProperty[][] grid;
 
@@ -58,11 +73,16 @@ public class Grid {
      * @param rows number of rows
      */
     public Grid(int cols, int rows) {
+        if (cols > MAX_SIZE || rows > MAX_SIZE) {
+            throw new IllegalArgumentException("Grid can be at most " + MAX_SIZE + " x " + MAX_SIZE);
+        }
+        
         this.cols = cols;
         this.rows = rows;
 
         //Create the grid itself
         grid = new SimpleIntegerProperty[cols][rows];
+        cells = new int[cols][rows];
 
         //Add a SimpleIntegerProperty to every block in the grid
         for(var y = 0; y < rows; y++) {
@@ -71,8 +91,8 @@ public class Grid {
             }
         }
         
-        rowsToRemove = new ArrayList<Integer>();
-        colsToRemove = new ArrayList<Integer>();
+        rowFill = new int[cols];
+        colFill = new int[rows];
     }
 
     /**
@@ -94,7 +114,7 @@ public class Grid {
     			if (pieceBlocks[k+1][j+1] != 0) {
     				if (x + k < 0 || x + k >= this.cols ||
     						y + j < 0 || y + j >= this.rows ||
-    						grid[x+k][y+j].get() != 0)
+    						cells[x+k][y+j] != 0)
     					return false;
     			}
     		}
@@ -114,60 +134,74 @@ public class Grid {
     	
     	int[][] pieceBlocks = piece.getBlocks();
     	
-    	Set<Integer> valX = new HashSet<Integer>();
-    	Set<Integer> valY = new HashSet<Integer>();
+    	long valX = 0;
+    	long valY = 0;
     	
     	for (var k = -1; k < 2; k++) {
     		for (var j = -1; j < 2; j++) {
     			if (pieceBlocks[k+1][j+1] != 0) {
-    				grid[x+k][y+j].set(pieceBlocks[k+1][j+1]);
-    				valX.add(x+k);
-    				valY.add(y+j);
+    				set(x+k, y+j, pieceBlocks[k+1][j+1]);
+    				valX |= 1L << (x+k);
+    				valY |= 1L << (y+j);
     			}
     		}
     	}
     	
-    	updateGrid(new ArrayList<Integer>(valX), new ArrayList<Integer>(valY));
+    	updateGrid(valX, valY);
     }
  
     /**
      * Check and update the grid by removing the rows and columns that are full from the last played piece.
-     * In order not to check the whole grid, we only check the rows and columns where blocks were placed.
-     * @param valX List of X coordinates of placed blocks
-     * @param valY List of Y coordinates of placed blocks
+     * In order not to check the whole grid, we only check the rows and columns where blocks were placed, and each
+     * check is a compare against the fill count of that line.
+     * @param valX Bitmask of the X coordinates of placed blocks
+     * @param valY Bitmask of the Y coordinates of placed blocks
      */
-    public void updateGrid(ArrayList<Integer> valX, ArrayList<Integer> valY) {
-    	boolean toRemove = false;
-
+    public void updateGrid(long valX, long valY) {
     	clearData();
     	
-    	for (int x : valX) {
-    		toRemove = true;
-    		for (var y = 0; y < cols; y++) {
-    			if (grid[x][y].get() == 0) {
-    				toRemove = false;
-    				break;
-    			}
-    		}
-    		if (toRemove) rowsToRemove.add(x);
+    	for (long bits = valX; bits != 0; bits &= bits - 1) {
+    		int x = Long.numberOfTrailingZeros(bits);
+    		if (rowFill[x] == rows) rowsToRemove |= 1L << x;
     	}
     	
-    	for (int y : valY) {
-    		toRemove = true;
-    		for (var x = 0; x < rows; x++) {
-    			if (grid[x][y].get() == 0) {
-    				toRemove = false;
-    				break;
-    			}
-    		}
-    		if (toRemove) colsToRemove.add(y);
+    	for (long bits = valY; bits != 0; bits &= bits - 1) {
+    		int y = Long.numberOfTrailingZeros(bits);
+    		if (colFill[y] == cols) colsToRemove |= 1L << y;
     	}
     	
-    	for (int row : rowsToRemove) { for (var col = 0; col < cols; col++) { grid[row][col].set(0); Multimedia.playAudio("clear.wav"); }}
-    	for (int col : colsToRemove) { for (var row = 0; row < rows; row++) { grid[row][col].set(0); Multimedia.playAudio("clear.wav"); }}
-    	
+    	for (long bits = rowsToRemove; bits != 0; bits &= bits - 1) {
+    		int row = Long.numberOfTrailingZeros(bits);
+    		for (var col = 0; col < rows; col++) { set(row, col, 0); }
+    	}
+    	for (long bits = colsToRemove; bits != 0; bits &= bits - 1) {
+    		int col = Long.numberOfTrailingZeros(bits);
+    		for (var row = 0; row < cols; row++) { set(row, col, 0); }
+    	}
     }
     
+    /**
+     * Copy the current values of the grid, to be handed to the UI
+     * @return a copy of the cells
+     */
+    public int[][] copyCells() {
+    	int[][] copy = new int[cols][];
+    	for (var x = 0; x < cols; x++) copy[x] = cells[x].clone();
+    	return copy;
+    }
+
+    /**
+     * Update the display properties from a snapshot. Must be called on the UI thread.
+     * @param state the snapshot to display
+     */
+    public void display(GameState state) {
+    	for (var x = 0; x < cols; x++) {
+    		for (var y = 0; y < rows; y++) {
+    			grid[x][y].set(state.getCell(x, y));
+    		}
+    	}
+    }
+
     /**
      * Get the Integer property contained inside the grid at a given row and column index. Can be used for binding.
      * @param x column
@@ -185,7 +219,11 @@ public class Grid {
      * @param value the new value
      */
     public void set(int x, int y, int value) {
-        grid[x][y].set(value);
+        //Keep the fill counts of the row and col in step with the cell
+        if (cells[x][y] == 0 && value != 0) { rowFill[x]++; colFill[y]++; }
+        else if (cells[x][y] != 0 && value == 0) { rowFill[x]--; colFill[y]--; }
+        
+        cells[x][y] = value;
     }
 
     /**
@@ -196,8 +234,8 @@ public class Grid {
      */
     public int get(int x, int y) {
         try {
-            //Get the value held in the property at the x and y index provided
-            return grid[x][y].get();
+            //Get the value held at the x and y index provided
+            return cells[x][y];
         } catch (ArrayIndexOutOfBoundsException e) {
             //No such index
             return -1;
@@ -224,15 +262,39 @@ public class Grid {
      * Clear which rows and cols were removed
      */
     public void clearData() {
-    	rowsToRemove.clear();
-    	colsToRemove.clear();
+    	rowsToRemove = 0;
+    	colsToRemove = 0;
     }
 
-    public ArrayList<Integer> getRowsRemoved() {
+    /**
+     * Get the rows removed by the last played piece
+     * @return bitmask with bit x set for each removed row x
+     */
+    public long getRowsRemoved() {
     	return rowsToRemove;
     }
     
-    public ArrayList<Integer> getColsRemoved() {
+    /**
+     * Get the cols removed by the last played piece
+     * @return bitmask with bit y set for each removed col y
+     */
+    public long getColsRemoved() {
     	return colsToRemove;
     }
+    
+    /**
+     * Get the number of rows removed by the last played piece
+     * @return the number of rows
+     */
+    public int getRowsCleared() {
+    	return Long.bitCount(rowsToRemove);
+    }
+    
+    /**
+     * Get the number of cols removed by the last played piece
+     * @return the number of cols
+     */
+    public int getColsCleared() {
+    	return Long.bitCount(colsToRemove);
+    }
 }
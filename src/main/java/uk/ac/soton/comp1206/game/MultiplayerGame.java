@@ -1,16 +1,18 @@
 package uk.ac.soton.comp1206.game;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Executor;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import javafx.application.Platform;
+import uk.ac.soton.comp1206.event.BoardListener;
 import uk.ac.soton.comp1206.event.MessageListener;
 import uk.ac.soton.comp1206.event.PlayersScoreListener;
+import uk.ac.soton.comp1206.network.BoardSync;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Message;
 
 /**
  * This class holds the logic for the multiplayer game
@@ -24,7 +26,44 @@ public class MultiplayerGame extends Game {
      * The communicator
      */
     private Communicator communicator;
+    
+    /**
+     * Encodes our board for BOARD messages, sending only what changed
+     */
+    private final BoardSync boardSync;
 
+    /**
+     * How many pieces to keep requested ahead of the next piece
+     */
+    public static final int PREFETCH = 3;
+    
+    /**
+     * Pieces the server has sent which are not in play yet, in the order they arrived
+     */
+    private final ArrayDeque<Integer> prefetched = new ArrayDeque<>();
+    
+    /**
+     * The number of placements still waiting for a piece to arrive
+     */
+    private int awaitedPieces;
+    
+    /**
+     * The most scores remembered while waiting for the server to report them. If the server falls further behind than
+     * this, the score it reports is no longer in the window and ours is sent again without need, which is harmless as
+     * SCORE only sets the score.
+     */
+    private static final int MAX_UNCONFIRMED = 16;
+    
+    /**
+     * Scores sent to the server that it has not reported back yet, oldest first
+     */
+    private final ArrayDeque<Integer> unconfirmedScores = new ArrayDeque<>();
+    
+    /**
+     * Whether we have warned that our scores cannot be checked, only used on the communicator thread
+     */
+    private boolean namelessWarned;
+    
     /**
      * The score listeners
      */
@@ -35,6 +74,11 @@ public class MultiplayerGame extends Game {
      */
     public ArrayList<MessageListener> messageListeners = new ArrayList<MessageListener>();
     
+    /**
+     * The listeners to the other players' boards
+     */
+    public ArrayList<BoardListener> boardListeners = new ArrayList<BoardListener>();
+    
     /**
      * Constructor for the game, initialise the communicator and the grid
      * @param cols
@@ -44,6 +88,22 @@ public class MultiplayerGame extends Game {
 	public MultiplayerGame(int cols, int rows, Communicator communicator) {
 		super(cols, rows);
 		this.communicator = communicator;
+		this.boardSync = new BoardSync(cols, rows);
+	}
+	
+	/**
+	 * Constructor for a game running on the given executors and clock, for example without a UI
+	 * @param cols number of columns
+	 * @param rows number of rows
+	 * @param communicator the communicator
+	 * @param loop the executor all game state changes run on, must run tasks one at a time in order
+	 * @param ui the executor snapshots and listener calls are published on
+	 * @param clock the clock for the piece timer
+	 */
+	public MultiplayerGame(int cols, int rows, Communicator communicator, Executor loop, Executor ui, GameClock clock) {
+		super(cols, rows, loop, ui, clock);
+		this.communicator = communicator;
+		this.boardSync = new BoardSync(cols, rows);
 	}
 	
 	/**
@@ -53,20 +113,30 @@ public class MultiplayerGame extends Game {
 	public void start() {
         logger.info("Starting game");
         
-        //Initialise the game as a single player game, then add the multiplayer components
-        initialiseGame();
         initialiseMultiplayer();
         
-        //Reset pieces from single player
-        currentPiece = null;
-        nextPiece = null;
-        
-        //Get players and their scores
-        communicator.send("SCORES");
-        
-        //Get pieces from multiplayer
-        communicator.send("PIECE");
-        communicator.send("PIECE");
+        execute(() -> {
+        	//Initialise the game as a single player game, with the pieces coming from the server instead
+        	resetState();
+        	if (recorder != null) recorder.start(this);
+        	currentPiece = null;
+        	nextPiece = null;
+        	prefetched.clear();
+        	awaitedPieces = 0;
+        	unconfirmedScores.clear();
+        	
+        	//The timer starts when the first two pieces arrive
+        	publishState();
+        	stopTimer();
+        	
+        	//Get players and their scores
+        	communicator.send("SCORES");
+        	
+        	//Get the first two pieces and some to play after them
+        	for (int i = 0; i < 2 + PREFETCH; i++) {
+        		communicator.send("PIECE");
+        	}
+        });
     }
 	
 	/**
@@ -74,29 +144,60 @@ public class MultiplayerGame extends Game {
 	 */
 	private void initialiseMultiplayer() {
 		
-		//Add listener to the communicator
-		communicator.addListener((message) -> {
-			Platform.runLater(new Runnable() {
-
-				@Override
-				public void run() {
-					if (message.startsWith("SCORES")) {
-						for (var listener : scoreListeners) {
-							listener.playerScore(message.replace("SCORES ", ""));
-						}
-					} else if (message.startsWith("PIECE")) {
-						afterPieceTwo(Integer.parseInt(message.replace("PIECE ", "")));
-					} else if (message.startsWith("BOARD")) {
-						
-					} else if (message.startsWith("MSG")) {
-						for (var listener : messageListeners) {
-							listener.receiveMessage(message.replace("MSG ", ""));
-						}
-					}
+		//Pieces go to the game loop, everything else only updates the UI
+		communicator.subscribe(Message.Piece.class, (piece) -> submit(GameCommand.networkPiece(piece.getValue())));
+		
+		//Our own entry is checked against the score we have
+		communicator.subscribe(Message.Scores.class, (scores) -> {
+			String name = communicator.getName();
+			if (name == null) {
+				if (!namelessWarned) {
+					logger.warn("The server has not told us our name, lost SCORE updates will not be sent again");
+					namelessWarned = true;
 				}
-				
-			});
+				return;
+			}
+			for (var player : scores.getPlayers()) {
+				if (player.getName().equals(name)) submit(GameCommand.serverScore(player.getScore()));
+			}
 		});
+		
+		communicator.subscribeUi(Message.Scores.class, (scores) -> {
+			for (var listener : scoreListeners) {
+				listener.playerScore(scores);
+			}
+		});
+		
+		communicator.subscribeUi(Message.Chat.class, (chat) -> {
+			for (var listener : messageListeners) {
+				listener.receiveMessage(chat);
+			}
+		});
+		
+		communicator.subscribeUi(Message.Board.class, (board) -> {
+			for (var listener : boardListeners) {
+				listener.receiveBoard(board);
+			}
+		});
+	}
+	
+	/**
+	 * Process a command, handling pieces from the server. Moves which act on a piece are ignored while we wait for one
+	 * to arrive, as the current piece is the one just played.
+	 * @param command the command
+	 */
+	@Override
+	protected void process(GameCommand command) {
+		if (gameOver) return;
+		
+		switch (command.getType()) {
+			case NETWORK_PIECE -> receivePiece(command.getX());
+			case SERVER_SCORE -> reconcileScore(command.getX());
+			case PLACE, DROP, ROTATE, SWAP, BOT -> {
+				if (awaitedPieces == 0 && currentPiece != null) super.process(command);
+			}
+			default -> super.process(command);
+		}
 	}
 	
 	/**
@@ -105,90 +206,154 @@ public class MultiplayerGame extends Game {
 	@Override
 	public void gameLoop() {
     	grid.clearData();
+    	
+    	//Nothing was cleared, which ends any combo
+    	scorePlacement();
 
-    	lives.set(lives.get()-1);
-    	if (lives.get() < 0) {
-    		timer.cancel();
-    		
+    	lives--;
+    	publishState();
+    	
+    	if (lives < 0) {
     		communicator.send("DIE");
-    		for (var listener: gameOverListeners) {
-    			listener.gameOver();
-    		}
+    		endGame();
     	} else { 
-    		afterPiece();
-    		communicator.send("LIVES " + lives.get());
+    		sendBoard();
+    		nextPieces();
+    		communicator.send("LIVES " + lives);
     		communicator.send("SCORES");
     	}
     }
 	
-	//What happens when a piece is played
+	/**
+	 * What happens when a piece is played. The score is counted and shown straight away, the server is told without
+	 * waiting, and the next piece comes from the prefetched ones if there are any.
+	 */
 	@Override
-	 public void afterPiece() {
-		StringBuilder boardToSend = new StringBuilder();
+	public void afterPiece() {
+		scorePlacement();
+		sendBoard();
+		sendScore();
 		
-		for (var x = 0; x < cols; x++) {
-			for (var y = 0; y < rows; y++) {
-				boardToSend.append(grid.get(x, y));
-				boardToSend.append(" ");
-			}
+		nextPieces();
+    }
+	
+	/**
+	 * Tell the server our score, remembering it until the server reports it back
+	 */
+	private void sendScore() {
+		if (unconfirmedScores.size() == MAX_UNCONFIRMED) unconfirmedScores.poll();
+		unconfirmedScores.add(score);
+		
+		communicator.send("SCORE " + score);
+		communicator.send("SCORES");
+	}
+	
+	/**
+	 * Check the score the server has for us. An older score we sent may still be the latest it has seen, but a score
+	 * we never sent means an update was lost, so ours is sent again.
+	 * @param serverScore the score the server reported
+	 */
+	private void reconcileScore(int serverScore) {
+		if (serverScore == score) {
+			unconfirmedScores.clear();
+			return;
+		}
+		
+		//Scores sent before the one the server has are confirmed too
+		while (!unconfirmedScores.isEmpty()) {
+			if (unconfirmedScores.poll() == serverScore) return;
 		}
 		
-		communicator.send("BOARD " + boardToSend.toString());
+		logger.info("Server has score " + serverScore + " but ours is " + score + ", sending it again");
+		sendScore();
+	}
+	
+	/**
+	 * Send our board if it changed or a keyframe is due. Only a server that says every client can decode deltas gets
+	 * them.
+	 */
+	private void sendBoard() {
+		String board = boardSync.encode(grid, communicator.hasFeature(BoardSync.FEATURE));
+		if (board != null) communicator.send("BOARD " + board);
+	}
+	
+	/**
+	 * Move the next piece into play and take a new next piece from the prefetched ones, asking the server for another
+	 * to keep the buffer full. If none has arrived yet, the move happens when it does, and the timer is stopped until
+	 * then so waiting for the network cannot cost a life.
+	 */
+	private void nextPieces() {
+		if (prefetched.isEmpty()) {
+			//Still show the new score and board while waiting
+			awaitedPieces++;
+			stopTimer();
+			publishState();
+			return;
+		}
+		
+		currentPiece = nextPiece;
+		nextPiece = GamePiece.createPiece(prefetched.poll());
 		communicator.send("PIECE");
-    }
+		
+		publishState();
+		updatePieceListeners();
+		setTimer();
+	}
 	
 	/**
-	 * What happens when a piece is played for multiplayer
-	 * @param pieceValue The value of the next piece
+	 * Handle a piece from the server. The first two become the current and next piece, the rest are kept in order.
+	 * @param pieceValue The value of the piece
 	 */
-	private void afterPieceTwo(int pieceValue) {
+	private void receivePiece(int pieceValue) {
+		if (recorder != null) recorder.piece(pieceValue);
 		
-		//Get next piece
-    	currentPiece = nextPiece;
-    	nextPiece = GamePiece.createPiece(pieceValue);
-    	
-    	//Calculate score if both pieces have been initialised
-		if (currentPiece != null) {
-	    	int rowsCleared = grid.getRowsRemoved().size();
-	    	int colsCleared = grid.getColsRemoved().size();
-	    	int blocksCleared = rowsCleared*cols + colsCleared*rows - rowsCleared*colsCleared;
-	    	int newScore = (rowsCleared + colsCleared) * blocksCleared * 10 * multiplier;
-	    	
-	    	score.set(score.get() + newScore);
-	    	tempScore += newScore;
-	    	
-	    	multiplier = rowsCleared + colsCleared > 0 ? multiplier+1: 1;
-	    	
-	    	if(tempScore >= 1000) {
-	    		tempScore = 0;
-	    		level.set(level.get()+1);
-	    	}
-	    	    	
-			communicator.send("SCORE " + score.get());
-			communicator.send("SCORES");
+		if (currentPiece == null) {
+			currentPiece = nextPiece;
+			nextPiece = GamePiece.createPiece(pieceValue);
 			
-	    	updatePieceListeners();
-	    	setTimer();
+			if (currentPiece != null) {
+				publishState();
+				updatePieceListeners();
+				setTimer();
+			}
+			return;
+		}
+		
+		prefetched.add(pieceValue);
+		if (awaitedPieces > 0) {
+			awaitedPieces--;
+			nextPieces();
 		}
 	}
 
+	@Override
+	public String getMode() {
+		return "multiplayer";
+	}
+	
+	/**
+	 * The pieces come from the server, so there is no seed to record
+	 */
+	@Override
+	protected long getSeed() {
+		return 0;
+	}
+	
 	public void addScoreListener(PlayersScoreListener listener) { scoreListeners.add(listener); }
 	
 	public void addMessageListener(MessageListener listener) { messageListeners.add(listener); }
 	
+	public void addBoardListener(BoardListener listener) { boardListeners.add(listener); }
+	
 	/**
-	 * Clear all the listeners and stop the timer
+	 * Clear all the listeners and stop the game loop
 	 */
 	@Override
 	public void cleanUp() {
-    	timer.cancel();
+    	super.cleanUp();
     	
-    	currentBlockListeners.clear();
-    	pieceListeners.clear();
-    	timerListeners.clear();
-    	modelListeners.clear();
-    	gameOverListeners.clear();
     	scoreListeners.clear();
     	messageListeners.clear();
+    	boardListeners.clear();
     }
 }
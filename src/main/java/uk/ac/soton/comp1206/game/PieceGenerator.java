@@ -0,0 +1,66 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A PieceGenerator decides which piece comes next. It is seeded once per game, so the same seed always gives the same
+ * sequence of pieces, which makes games reproducible for replays, benchmarks and bot evaluation.
+ */
+public interface PieceGenerator {
+
+	/**
+	 * Get the number of the next piece
+	 * @return a piece number between 0 and GamePiece.PIECES - 1
+	 */
+	public int next();
+
+	/**
+	 * Get the seed this generator was created with
+	 * @return the seed
+	 */
+	public long getSeed();
+
+	/**
+	 * Get the name of the distribution and anything else create needs to make it again, for example to record it next
+	 * to the seed
+	 * @return the name
+	 */
+	public String getType();
+
+	/**
+	 * Create a generator where every piece is equally likely on every draw
+	 * @param seed the seed
+	 * @return the generator
+	 */
+	public static PieceGenerator uniform(long seed) { return new UniformPieceGenerator(seed); }
+
+	/**
+	 * Create a generator which deals every piece once from a shuffled bag before refilling it
+	 * @param seed the seed
+	 * @return the generator
+	 */
+	public static PieceGenerator bag(long seed) { return new BagPieceGenerator(seed); }
+
+	/**
+	 * Create a generator where each piece is drawn with the given relative weight
+	 * @param seed the seed
+	 * @param weights one weight for each piece
+	 * @return the generator
+	 */
+	public static PieceGenerator weighted(long seed, int[] weights) { return new WeightedPieceGenerator(seed, weights); }
+
+	/**
+	 * Create a generator by the name returned from getType, so it deals the same pieces as the one that returned it
+	 * @param type the name of the distribution, with the weights for a weighted one
+	 * @param seed the seed
+	 * @return the generator
+	 * @throws IllegalArgumentException if there is no such generator
+	 */
+	public static PieceGenerator create(String type, long seed) {
+		switch (type) {
+			case UniformPieceGenerator.TYPE: return uniform(seed);
+			case BagPieceGenerator.TYPE: return bag(seed);
+		}
+		if (type.startsWith(WeightedPieceGenerator.TYPE)) return WeightedPieceGenerator.parse(type, seed);
+
+		throw new IllegalArgumentException("No such piece generator: " + type);
+	}
+}
@@ -0,0 +1,184 @@
+package uk.ac.soton.comp1206.game;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A replay read back from the bytes a ReplayRecorder wrote. The events are kept in parallel arrays: the type, the
+ * milliseconds since the previous event, and up to four arguments.
+ */
+public class Replay {
+
+	private final String clientVersion;
+
+	private final String mode;
+
+	private final String generatorType;
+
+	private final long seed;
+
+	private final int cols;
+
+	private final int rows;
+
+	private int[] types = new int[64];
+
+	private long[] delays = new long[64];
+
+	/**
+	 * Four arguments per event, unused ones are 0
+	 */
+	private int[] args = new int[64 * 4];
+
+	private int size;
+
+	/**
+	 * Position while reading
+	 */
+	private final byte[] data;
+	private int position;
+
+	/**
+	 * Read a replay
+	 * @param data the bytes of the replay
+	 * @throws IllegalArgumentException if it is not a replay this version can read
+	 */
+	public Replay(byte[] data) {
+		this.data = data;
+
+		if (readVarint() != ReplayRecorder.MAGIC) throw new IllegalArgumentException("Not a replay");
+		long format = readVarint();
+		if (format != ReplayRecorder.FORMAT) throw new IllegalArgumentException("Unknown replay format " + format);
+
+		clientVersion = readString();
+		mode = readString();
+		generatorType = readString();
+		long zigzag = readVarint();
+		seed = (zigzag >>> 1) ^ -(zigzag & 1);
+		cols = (int) readVarint();
+		rows = (int) readVarint();
+
+		while (position < data.length) {
+			int type = (int) readVarint();
+			long delay = readVarint();
+			int count = switch (type) {
+				case ReplayRecorder.PLACE, ReplayRecorder.END -> 2;
+				case ReplayRecorder.ROTATE, ReplayRecorder.PIECE -> 1;
+				case ReplayRecorder.BOT -> 4;
+				case ReplayRecorder.SWAP, ReplayRecorder.TIMEOUT -> 0;
+				default -> throw new IllegalArgumentException("Unknown replay event " + type);
+			};
+
+			if (size == types.length) {
+				types = Arrays.copyOf(types, size * 2);
+				delays = Arrays.copyOf(delays, size * 2);
+				args = Arrays.copyOf(args, size * 2 * 4);
+			}
+			types[size] = type;
+			delays[size] = delay;
+			for (int i = 0; i < count; i++) args[size * 4 + i] = (int) readVarint();
+			size++;
+		}
+	}
+
+	/**
+	 * Get the version of the client that recorded the replay
+	 * @return the version
+	 */
+	public String getClientVersion() { return clientVersion; }
+
+	/**
+	 * Get the kind of game that was recorded, see Game.getMode
+	 * @return the mode
+	 */
+	public String getMode() { return mode; }
+
+	/**
+	 * Get the type of the piece generator, as returned by PieceGenerator.getType
+	 * @return the type
+	 */
+	public String getGeneratorType() { return generatorType; }
+
+	/**
+	 * Get the seed of the piece generator
+	 * @return the seed
+	 */
+	public long getSeed() { return seed; }
+
+	/**
+	 * Get the number of columns of the board
+	 * @return the number of columns
+	 */
+	public int getCols() { return cols; }
+
+	/**
+	 * Get the number of rows of the board
+	 * @return the number of rows
+	 */
+	public int getRows() { return rows; }
+
+	/**
+	 * Get the number of events
+	 * @return the count
+	 */
+	public int size() { return size; }
+
+	/**
+	 * Get the type of an event, one of the ReplayRecorder event constants
+	 * @param event the index of the event
+	 * @return the type
+	 */
+	public int getType(int event) { return types[event]; }
+
+	/**
+	 * Get the time between an event and the one before it
+	 * @param event the index of the event
+	 * @return the delay in milliseconds
+	 */
+	public long getDelay(int event) { return delays[event]; }
+
+	/**
+	 * Get an argument of an event
+	 * @param event the index of the event
+	 * @param arg the index of the argument, 0 to 3
+	 * @return the argument
+	 */
+	public int getArg(int event, int arg) { return args[event * 4 + arg]; }
+
+	/**
+	 * Whether the pieces can be dealt again from the seed. Multiplayer pieces came from the server.
+	 * @return whether the replay can be played
+	 */
+	public boolean isPlayable() {
+		return !generatorType.isEmpty() && !mode.equals("multiplayer");
+	}
+
+	/**
+	 * Whether the replay ends with the final score, which it does unless the game was cut short
+	 * @return whether there is an END event
+	 */
+	public boolean isFinished() {
+		return size > 0 && types[size - 1] == ReplayRecorder.END;
+	}
+
+	private long readVarint() {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			if (position >= data.length) throw new IllegalArgumentException("Replay is cut short");
+			byte b = data[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+			shift += 7;
+			if (shift > 63) throw new IllegalArgumentException("Bad number in replay");
+		}
+	}
+
+	private String readString() {
+		int length = (int) readVarint();
+		if (length < 0 || position + length > data.length) throw new IllegalArgumentException("Replay is cut short");
+		String value = new String(data, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+}
@@ -0,0 +1,154 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Plays a replay back on a fresh Game. The game runs on the calling thread with a VirtualClock that is never advanced,
+ * so the timer only runs out where the replay says it did, and every move is applied straight away.
+ *
+ * Played with an executor that drops UI updates, nothing is rendered and a game takes well under a millisecond, which
+ * makes replays usable as a check on the scoring rules. Played with an executor that runs UI updates, the game can be
+ * shown on a GameBoard one event at a time.
+ */
+public class ReplayPlayer {
+
+	/**
+	 * The outcome of playing a replay to the end
+	 */
+	public static class Result {
+		private final int expectedScore;
+		private final int expectedLevel;
+		private final int score;
+		private final int level;
+
+		Result(int expectedScore, int expectedLevel, int score, int level) {
+			this.expectedScore = expectedScore;
+			this.expectedLevel = expectedLevel;
+			this.score = score;
+			this.level = level;
+		}
+
+		/**
+		 * Whether the game finished with the recorded score and level
+		 * @return whether they match
+		 */
+		public boolean matches() {
+			return score == expectedScore && level == expectedLevel;
+		}
+
+		/**
+		 * Get the score the replay finished on when played
+		 * @return the score
+		 */
+		public int getScore() { return score; }
+
+		/**
+		 * Get the level the replay finished on when played
+		 * @return the level
+		 */
+		public int getLevel() { return level; }
+
+		@Override
+		public String toString() {
+			return String.format("recorded score %d level %d, played score %d level %d", expectedScore, expectedLevel,
+					score, level);
+		}
+	}
+
+	private final Replay replay;
+
+	private final Game game;
+
+	/**
+	 * The next event to play
+	 */
+	private int next;
+
+	/**
+	 * Set up a game for a replay
+	 * @param replay the replay
+	 * @param ui the executor UI updates are published on
+	 * @throws IllegalArgumentException if the replay cannot be played
+	 */
+	public ReplayPlayer(Replay replay, Executor ui) {
+		if (!replay.isPlayable()) throw new IllegalArgumentException("Cannot play a " + replay.getMode() + " replay");
+
+		this.replay = replay;
+		this.game = new Game(replay.getCols(), replay.getRows(), Runnable::run, ui, new VirtualClock());
+		game.setPieceGenerator(PieceGenerator.create(replay.getGeneratorType(), replay.getSeed()));
+	}
+
+	/**
+	 * Play a replay to the end without showing it
+	 * @param data the bytes of the replay
+	 * @return the outcome
+	 * @throws IllegalArgumentException if the replay cannot be read or played
+	 */
+	public static Result verify(byte[] data) {
+		var player = new ReplayPlayer(new Replay(data), (update) -> { });
+		player.start();
+		while (player.hasNext()) player.step();
+		return player.getResult();
+	}
+
+	/**
+	 * Get the game the replay is played on
+	 * @return the game
+	 */
+	public Game getGame() {
+		return game;
+	}
+
+	/**
+	 * Start the game, dealing the first pieces
+	 */
+	public void start() {
+		game.initialiseGame();
+		next = 0;
+	}
+
+	/**
+	 * Whether there are events left to play
+	 * @return whether there are
+	 */
+	public boolean hasNext() {
+		return next < replay.size();
+	}
+
+	/**
+	 * Get how long after the previous event the next one happened
+	 * @return the delay in milliseconds
+	 */
+	public long getNextDelay() {
+		return replay.getDelay(next);
+	}
+
+	/**
+	 * Play the next event
+	 */
+	public void step() {
+		int event = next++;
+
+		switch (replay.getType(event)) {
+			case ReplayRecorder.PLACE -> game.process(GameCommand.place(replay.getArg(event, 0), replay.getArg(event, 1)));
+			case ReplayRecorder.ROTATE -> game.process(GameCommand.rotate(replay.getArg(event, 0)));
+			case ReplayRecorder.SWAP -> game.process(GameCommand.swap());
+			case ReplayRecorder.BOT -> game.playBotMove(replay.getArg(event, 0) == 1, replay.getArg(event, 1),
+					replay.getArg(event, 2), replay.getArg(event, 3));
+			case ReplayRecorder.TIMEOUT -> game.process(GameCommand.timeout(game.timerGeneration));
+			default -> { }
+		}
+	}
+
+	/**
+	 * Compare the game so far with the score and level the replay ended on
+	 * @return the outcome
+	 * @throws IllegalStateException if the replay has no final score
+	 */
+	public Result getResult() {
+		if (!replay.isFinished()) throw new IllegalStateException("The replay has no final score");
+
+		int end = replay.size() - 1;
+		return new Result(replay.getArg(end, 0), replay.getArg(end, 1), game.score, game.level);
+	}
+}
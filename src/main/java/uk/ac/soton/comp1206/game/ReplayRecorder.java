@@ -0,0 +1,230 @@
+package uk.ac.soton.comp1206.game;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Records everything that changes a game into a compact binary replay. Called on the game loop only.
+ *
+ * A replay starts with a header: the magic number, the format version, the client version, the mode, the piece
+ * generator type and seed, and the board size. Then comes one event per move, each a type and the milliseconds since
+ * the previous event, followed by its arguments. The last event is END with the final score and level, so a replay can
+ * be checked against a fresh run of the same moves.
+ *
+ * Every number is a varint, seven bits per byte with the high bit set on all but the last, so a typical event takes
+ * three or four bytes. Events go into a buffer allocated up front, and the finished replay is handed to the sink in one
+ * piece, which can write it out on another thread.
+ */
+public class ReplayRecorder {
+
+	/**
+	 * "TRP1", the first four bytes of every replay
+	 */
+	public static final int MAGIC = 0x54525031;
+
+	/**
+	 * The version of the replay format
+	 */
+	public static final int FORMAT = 1;
+
+	/**
+	 * The version of the client making the replay
+	 */
+	public static final String CLIENT_VERSION = clientVersion();
+
+	/** The current piece was placed at x, y */
+	public static final int PLACE = 0;
+	/** The current (0) or next (1) piece was rotated once */
+	public static final int ROTATE = 1;
+	/** The current and next piece were swapped */
+	public static final int SWAP = 2;
+	/** The bot swapped if asked, rotated the current piece a number of times and placed it at x, y */
+	public static final int BOT = 3;
+	/** The timer ran out */
+	public static final int TIMEOUT = 4;
+	/** A piece arrived from the server */
+	public static final int PIECE = 5;
+	/** The game ended, with the final score and level */
+	public static final int END = 6;
+
+	/**
+	 * Large enough for most games without growing
+	 */
+	private static final int INITIAL_SIZE = 2048;
+
+	private final Consumer<byte[]> sink;
+
+	private byte[] buffer = new byte[INITIAL_SIZE];
+
+	private int length;
+
+	private GameClock clock;
+
+	/**
+	 * The clock time of the previous event
+	 */
+	private long last;
+
+	/**
+	 * Whether a game is being recorded
+	 */
+	private boolean recording;
+
+	/**
+	 * Create a recorder
+	 * @param sink given each finished replay
+	 */
+	public ReplayRecorder(Consumer<byte[]> sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Start recording a game, writing the header. Call before the first piece is drawn.
+	 * @param game the game
+	 */
+	public void start(Game game) {
+		clock = game.getClock();
+		last = clock.now();
+		length = 0;
+		recording = true;
+
+		writeVarint(MAGIC);
+		writeVarint(FORMAT);
+		writeString(CLIENT_VERSION);
+		writeString(game.getMode());
+		writeString(game.getPieceGenerator().getType());
+		writeVarint(zigzag(game.getSeed()));
+		writeVarint(game.getCols());
+		writeVarint(game.getRows());
+	}
+
+	/**
+	 * Record a placement by the player
+	 * @param x the X coordinate
+	 * @param y the Y coordinate
+	 */
+	public void place(int x, int y) {
+		if (!event(PLACE)) return;
+		writeVarint(x);
+		writeVarint(y);
+	}
+
+	/**
+	 * Record a rotation
+	 * @param code 0 for the current piece, 1 for the next piece
+	 */
+	public void rotate(int code) {
+		if (!event(ROTATE)) return;
+		writeVarint(code);
+	}
+
+	/**
+	 * Record a swap of the current and next piece
+	 */
+	public void swap() {
+		event(SWAP);
+	}
+
+	/**
+	 * Record a move by the bot
+	 * @param swap whether it swapped the pieces first
+	 * @param rotations how many times it rotated the piece it placed
+	 * @param x the X coordinate
+	 * @param y the Y coordinate
+	 */
+	public void bot(boolean swap, int rotations, int x, int y) {
+		if (!event(BOT)) return;
+		writeVarint(swap ? 1 : 0);
+		writeVarint(rotations);
+		writeVarint(x);
+		writeVarint(y);
+	}
+
+	/**
+	 * Record the timer running out
+	 */
+	public void timeout() {
+		event(TIMEOUT);
+	}
+
+	/**
+	 * Record a piece from the server
+	 * @param value the piece
+	 */
+	public void piece(int value) {
+		if (!event(PIECE)) return;
+		writeVarint(value);
+	}
+
+	/**
+	 * Finish the replay and hand it to the sink. Does nothing if it is already finished.
+	 * @param score the final score
+	 * @param level the final level
+	 */
+	public void finish(int score, int level) {
+		if (!event(END)) return;
+		writeVarint(score);
+		writeVarint(level);
+
+		recording = false;
+		sink.accept(Arrays.copyOf(buffer, length));
+	}
+
+	/**
+	 * Get the size of the replay so far
+	 * @return the number of bytes
+	 */
+	public int size() {
+		return length;
+	}
+
+	/**
+	 * Write the type of an event and the time since the previous one
+	 * @return false if nothing is being recorded
+	 */
+	private boolean event(int type) {
+		if (!recording) return false;
+
+		long now = clock.now();
+		writeVarint(type);
+		writeVarint(Math.max(0, now - last));
+		last = now;
+		return true;
+	}
+
+	private void writeString(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint(bytes.length);
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length += bytes.length;
+	}
+
+	private void writeVarint(long value) {
+		ensure(10);
+		while ((value & ~0x7FL) != 0) {
+			buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[length++] = (byte) value;
+	}
+
+	private void ensure(int extra) {
+		if (length + extra > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+	}
+
+	/**
+	 * Map signed numbers to unsigned so small negative numbers stay short
+	 * @param value the number
+	 * @return the mapped number
+	 */
+	public static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static String clientVersion() {
+		String version = ReplayRecorder.class.getPackage().getImplementationVersion();
+		return version != null ? version : "dev";
+	}
+}
@@ -0,0 +1,36 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The wall clock, running tasks on its own timer thread
+ */
+public class SystemClock implements GameClock {
+
+	/**
+	 * The timer thread
+	 */
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+		Thread thread = new Thread(runnable, "game-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Override
+	public long now() {
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	public Timeout schedule(Runnable task, long delay) {
+		var future = scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+		return () -> future.cancel(false);
+	}
+
+	@Override
+	public void stop() {
+		scheduler.shutdownNow();
+	}
+}
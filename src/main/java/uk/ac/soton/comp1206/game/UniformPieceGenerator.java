@@ -0,0 +1,35 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generates pieces where every piece is equally likely on every draw
+ */
+public class UniformPieceGenerator implements PieceGenerator {
+
+	static final String TYPE = "uniform";
+
+	private final long seed;
+
+	private final SplittableRandom random;
+
+	/**
+	 * Create a new generator
+	 * @param seed the seed
+	 */
+	public UniformPieceGenerator(long seed) {
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+	}
+
+	@Override
+	public int next() {
+		return random.nextInt(GamePiece.PIECES);
+	}
+
+	@Override
+	public long getSeed() { return seed; }
+
+	@Override
+	public String getType() { return TYPE; }
+}
@@ -0,0 +1,137 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.PriorityQueue;
+
+/**
+ * A clock that only moves when told to. Tasks run on the thread that advances the clock, in the order they are due,
+ * so a whole game of timeouts can be simulated without waiting.
+ */
+public class VirtualClock implements GameClock {
+
+	/**
+	 * A task waiting for the clock to reach its time
+	 */
+	private class Scheduled implements Timeout, Comparable<Scheduled> {
+
+		private final long time;
+
+		/**
+		 * Keeps tasks due at the same time in the order they were scheduled
+		 */
+		private final long order;
+
+		private final Runnable task;
+
+		/**
+		 * Set under the clock's lock, read when the task is about to run outside it
+		 */
+		private volatile boolean cancelled;
+
+		private Scheduled(long time, long order, Runnable task) {
+			this.time = time;
+			this.order = order;
+			this.task = task;
+		}
+
+		/**
+		 * Cancel the task. May be called from any thread, for example a game loop cancelling while another thread
+		 * advances the clock.
+		 */
+		@Override
+		public void cancel() {
+			synchronized (VirtualClock.this) {
+				cancelled = true;
+				queue.remove(this);
+			}
+		}
+
+		@Override
+		public int compareTo(Scheduled other) {
+			if (time != other.time) return Long.compare(time, other.time);
+			return Long.compare(order, other.order);
+		}
+	}
+
+	/**
+	 * The tasks waiting to run
+	 */
+	private final PriorityQueue<Scheduled> queue = new PriorityQueue<Scheduled>();
+
+	/**
+	 * The current time
+	 */
+	private long now;
+
+	/**
+	 * The number of tasks scheduled so far
+	 */
+	private long scheduled;
+
+	/**
+	 * Whether the clock has been stopped
+	 */
+	private boolean stopped;
+
+	@Override
+	public synchronized long now() {
+		return now;
+	}
+
+	@Override
+	public synchronized Timeout schedule(Runnable task, long delay) {
+		var next = new Scheduled(now + delay, scheduled++, task);
+		if (!stopped) queue.add(next);
+		return next;
+	}
+
+	/**
+	 * Move the clock forward, running every task that becomes due on the way
+	 * @param millis how far to move the clock
+	 */
+	public void advance(long millis) {
+		long target;
+		synchronized (this) { target = now + millis; }
+
+		while (true) {
+			Scheduled next;
+			synchronized (this) {
+				next = queue.peek();
+				if (stopped || next == null || next.time > target) {
+					now = target;
+					return;
+				}
+				queue.poll();
+				now = next.time;
+			}
+			if (!next.cancelled) next.task.run();
+		}
+	}
+
+	/**
+	 * Jump straight to the next task and run it
+	 * @return false if there was nothing to run
+	 */
+	public boolean runNext() {
+		Scheduled next;
+		synchronized (this) {
+			next = queue.peek();
+			if (stopped || next == null) return false;
+		}
+		advance(next.time - now());
+		return true;
+	}
+
+	/**
+	 * Get the number of tasks waiting to run
+	 * @return the number of tasks
+	 */
+	public synchronized int pending() {
+		return queue.size();
+	}
+
+	@Override
+	public synchronized void stop() {
+		stopped = true;
+		queue.clear();
+	}
+}
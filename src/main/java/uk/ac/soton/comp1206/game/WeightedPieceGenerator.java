@@ -0,0 +1,96 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generates pieces where each piece is drawn with a relative weight, for example to make the big pieces rarer.
+ * The type includes the weights, "weighted:1,1,2,...", so the same generator can be made again from it and the seed.
+ */
+public class WeightedPieceGenerator implements PieceGenerator {
+
+	static final String TYPE = "weighted";
+
+	private final long seed;
+
+	private final SplittableRandom random;
+
+	/**
+	 * The running total of the weights, so a draw is a binary search
+	 */
+	private final int[] cumulative;
+
+	/**
+	 * The name of the distribution and its weights
+	 */
+	private final String type;
+
+	/**
+	 * Create a new generator
+	 * @param seed the seed
+	 * @param weights one non-negative weight for each piece, at least one of them above 0
+	 */
+	public WeightedPieceGenerator(long seed, int[] weights) {
+		if (weights.length != GamePiece.PIECES) {
+			throw new IllegalArgumentException("Expected " + GamePiece.PIECES + " weights, got " + weights.length);
+		}
+
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+		this.cumulative = new int[weights.length];
+
+		long total = 0;
+		var type = new StringBuilder(TYPE);
+		for (var i = 0; i < weights.length; i++) {
+			if (weights[i] < 0) throw new IllegalArgumentException("Negative weight for piece " + i);
+			total += weights[i];
+			if (total > Integer.MAX_VALUE) throw new IllegalArgumentException("The weights add up to more than an int");
+			cumulative[i] = (int) total;
+			type.append(i == 0 ? ':' : ',').append(weights[i]);
+		}
+
+		if (total == 0) throw new IllegalArgumentException("All weights are 0");
+		this.type = type.toString();
+	}
+
+	/**
+	 * Make a generator again from the type it returned
+	 * @param type the type, with its weights
+	 * @param seed the seed
+	 * @return the generator
+	 * @throws IllegalArgumentException if the type has no weights or they are not valid
+	 */
+	static WeightedPieceGenerator parse(String type, long seed) {
+		if (!type.startsWith(TYPE + ":")) throw new IllegalArgumentException("No weights in " + type);
+
+		var parts = type.substring(TYPE.length() + 1).split(",");
+		int[] weights = new int[parts.length];
+		try {
+			for (var i = 0; i < parts.length; i++) weights[i] = Integer.parseInt(parts[i]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Bad weights in " + type);
+		}
+		return new WeightedPieceGenerator(seed, weights);
+	}
+
+	@Override
+	public int next() {
+		int draw = random.nextInt(cumulative[cumulative.length - 1]);
+
+		//Find the first piece whose running total is above the draw
+		int low = 0;
+		int high = cumulative.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cumulative[mid] > draw) high = mid;
+			else low = mid + 1;
+		}
+
+		return low;
+	}
+
+	@Override
+	public long getSeed() { return seed; }
+
+	@Override
+	public String getType() { return type; }
+}
@@ -0,0 +1,243 @@
+package uk.ac.soton.comp1206.network;
+
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Encodes the board for BOARD messages so that only what changed since the last message is sent, and decodes such
+ * messages back into a board.
+ *
+ * A keyframe is the full board as space separated values, x by x, which is what the server has always been sent. A
+ * delta starts with "~" followed by tokens: "r3" clears row 3, "c2" clears col 2 and "1,4,7" sets x 1, y 4 to 7.
+ * A keyframe is sent first, every KEYFRAME_INTERVAL messages, and whenever it would be shorter than the delta, so a
+ * client that missed a message catches up at the next keyframe.
+ *
+ * The server relays BOARD as it is, so every client in the game must understand deltas. Other clients, such as those
+ * on the university server, would show garbage between keyframes. Deltas are therefore only sent to a server that
+ * advertises the FEATURE, which only LocalServer does. Anywhere else every message is a keyframe, which costs the
+ * bandwidth deltas would have saved.
+ */
+public class BoardSync {
+
+	/**
+	 * The number of messages between two keyframes
+	 */
+	public static final int KEYFRAME_INTERVAL = 10;
+
+	/**
+	 * The feature a server advertises when every client on it can decode deltas
+	 */
+	public static final String FEATURE = "board-delta";
+
+	/**
+	 * The marker at the start of a delta
+	 */
+	private static final String DELTA = "~";
+
+	private final int cols;
+
+	private final int rows;
+
+	/**
+	 * The board as of the last encoded message
+	 */
+	private final int[][] last;
+
+	/**
+	 * Messages encoded since the last keyframe, -1 before the first keyframe
+	 */
+	private int sinceKeyframe = -1;
+
+	/**
+	 * Create an encoder for boards of the given size
+	 * @param cols number of columns
+	 * @param rows number of rows
+	 */
+	public BoardSync(int cols, int rows) {
+		this.cols = cols;
+		this.rows = rows;
+		this.last = new int[cols][rows];
+	}
+
+	/**
+	 * Encode the grid against the last encoded state
+	 * @param grid the grid
+	 * @param deltas whether the receivers can decode deltas, otherwise every message is a keyframe
+	 * @return the payload of the BOARD message, or null if nothing changed and no keyframe is due
+	 */
+	public String encode(Grid grid, boolean deltas) {
+		boolean keyframe = !deltas || sinceKeyframe < 0 || sinceKeyframe + 1 >= KEYFRAME_INTERVAL;
+		String payload = null;
+
+		if (!keyframe) {
+			payload = delta(grid);
+			if (payload == null) return null;
+
+			//A delta that has grown bigger than the board is not worth it
+			keyframe = keyframeLength(grid) <= payload.length();
+		}
+		if (keyframe) {
+			if (!deltas && sinceKeyframe >= 0 && !changed(grid)) return null;
+			payload = keyframe(grid);
+		}
+
+		for (var x = 0; x < cols; x++) {
+			for (var y = 0; y < rows; y++) {
+				last[x][y] = grid.get(x, y);
+			}
+		}
+
+		sinceKeyframe = keyframe ? 0 : sinceKeyframe + 1;
+		return payload;
+	}
+
+	/**
+	 * Encode the whole grid
+	 * @param grid the grid
+	 * @return the keyframe
+	 */
+	private String keyframe(Grid grid) {
+		var board = new StringBuilder(cols * rows * 2);
+
+		for (var x = 0; x < cols; x++) {
+			for (var y = 0; y < rows; y++) {
+				board.append(grid.get(x, y));
+				board.append(" ");
+			}
+		}
+
+		return board.toString();
+	}
+
+	/**
+	 * Get the length of the keyframe for a grid without building it
+	 * @param grid the grid
+	 * @return the length
+	 */
+	private int keyframeLength(Grid grid) {
+		int length = 0;
+
+		for (var x = 0; x < cols; x++) {
+			for (var y = 0; y < rows; y++) {
+				int value = grid.get(x, y);
+				length += (value < 0 ? 2 : 1) + 1;
+				for (value = Math.abs(value); value >= 10; value /= 10) length++;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Check whether the grid differs from the last encoded state
+	 * @param grid the grid
+	 * @return whether any cell changed
+	 */
+	private boolean changed(Grid grid) {
+		for (var x = 0; x < cols; x++) {
+			for (var y = 0; y < rows; y++) {
+				if (grid.get(x, y) != last[x][y]) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Encode the changes since the last message
+	 * @param grid the grid
+	 * @return the delta, or null if nothing changed
+	 */
+	private String delta(Grid grid) {
+		var delta = new StringBuilder(DELTA);
+		boolean changed = false;
+
+		//Cleared lines first, as one token each
+		long clearedRows = 0;
+		long clearedCols = 0;
+
+		for (var x = 0; x < cols; x++) {
+			int changes = 0;
+			boolean empty = true;
+			for (var y = 0; y < rows && empty; y++) {
+				empty = grid.get(x, y) == 0;
+				if (last[x][y] != 0) changes++;
+			}
+			if (empty && changes > 1) {
+				clearedRows |= 1L << x;
+				delta.append(" r").append(x);
+			}
+		}
+
+		for (var y = 0; y < rows; y++) {
+			int changes = 0;
+			boolean empty = true;
+			for (var x = 0; x < cols && empty; x++) {
+				empty = grid.get(x, y) == 0;
+				if (last[x][y] != 0 && (clearedRows & 1L << x) == 0) changes++;
+			}
+			if (empty && changes > 1) {
+				clearedCols |= 1L << y;
+				delta.append(" c").append(y);
+			}
+		}
+
+		changed = clearedRows != 0 || clearedCols != 0;
+
+		//Then every other cell that changed
+		for (var x = 0; x < cols; x++) {
+			if ((clearedRows & 1L << x) != 0) continue;
+
+			for (var y = 0; y < rows; y++) {
+				if ((clearedCols & 1L << y) != 0) continue;
+
+				int value = grid.get(x, y);
+				if (value != last[x][y]) {
+					delta.append(" ").append(x).append(",").append(y).append(",").append(value);
+					changed = true;
+				}
+			}
+		}
+
+		return changed ? delta.toString() : null;
+	}
+
+	/**
+	 * Apply a BOARD payload, keyframe or delta, to a board
+	 * @param payload the payload
+	 * @param board the board to update, indexed [x][y]
+	 * @param synced whether the board has received a keyframe, a delta is ignored otherwise
+	 * @return true if the payload was applied
+	 */
+	public static boolean decode(String payload, int[][] board, boolean synced) {
+		var tokens = payload.trim().split(" +");
+
+		if (!tokens[0].equals(DELTA)) {
+			//Keyframe
+			int i = 0;
+			for (var x = 0; x < board.length; x++) {
+				for (var y = 0; y < board[x].length; y++) {
+					board[x][y] = i < tokens.length && !tokens[i].isEmpty() ? Integer.parseInt(tokens[i]) : 0;
+					i++;
+				}
+			}
+			return true;
+		}
+
+		if (!synced) return false;
+
+		for (var i = 1; i < tokens.length; i++) {
+			var token = tokens[i];
+
+			if (token.charAt(0) == 'r') {
+				java.util.Arrays.fill(board[Integer.parseInt(token.substring(1))], 0);
+			} else if (token.charAt(0) == 'c') {
+				int y = Integer.parseInt(token.substring(1));
+				for (var x = 0; x < board.length; x++) board[x][y] = 0;
+			} else {
+				var cell = token.split(",");
+				board[Integer.parseInt(cell[0])][Integer.parseInt(cell[1])] = Integer.parseInt(cell[2]);
+			}
+		}
+
+		return true;
+	}
+}
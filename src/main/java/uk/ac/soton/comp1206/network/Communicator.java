@@ -1,29 +1,218 @@
 package uk.ac.soton.comp1206.network;
 
 import com.neovisionaries.ws.client.*;
-import javafx.scene.control.Alert;
+import javafx.application.Platform;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.event.CommunicationsListener;
+import uk.ac.soton.comp1206.event.ProtocolListener;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Uses web sockets to talk to a web socket server and relays communication to attached listeners
  *
+ * Outgoing messages are queued and flushed together once per tick. While queued, repeated queries are collapsed
+ * into one and older values of SCORE and LIVES are replaced by the newest.
+ *
+ * If the connection fails or drops, the communicator keeps reconnecting in the background with jittered exponential
+ * backoff. Messages sent in the meantime stay queued, and once connected again the last nickname and the queries the
+ * current scene relies on are sent again.
+ *
+ * Listeners subscribed with subscribeUi are called on the UI thread. Their messages are queued as they arrive and
+ * handed over in one UI task, in which older snapshots such as SCORES are dropped in favour of the latest.
+ *
  * YOU DO NOT NEED TO WORRY ABOUT THIS CLASS! Leave it be :-)
  */
 public class Communicator {
 
     private static final Logger logger = LogManager.getLogger(Communicator.class);
 
+    /**
+     * How often the outgoing queue is flushed, in milliseconds
+     */
+    public static final long TICK = 16;
+
+    /**
+     * Requests which give the same answer however many times they are sent before it arrives
+     */
+    private static final Set<String> QUERIES = Set.of("SCORES", "LIST", "USERS", "HISCORES");
+
+    /**
+     * Commands where only the latest value matters
+     */
+    private static final Set<String> LATEST = Set.of("SCORE", "LIVES");
+
+    /**
+     * Queries that are sent again after reconnecting, if the current scene has asked for them
+     */
+    private static final Set<String> RESUME = Set.of("SCORES", "USERS", "LIST");
+
+    /**
+     * The first reconnect delay, in milliseconds
+     */
+    public static final long BACKOFF_BASE = 250;
+
+    /**
+     * The longest reconnect delay, in milliseconds
+     */
+    public static final long BACKOFF_MAX = 30000;
+
+    /**
+     * The most messages kept while disconnected, older ones are dropped first
+     */
+    public static final int MAX_BUFFERED = 256;
+
+    /**
+     * How often to ping the server to measure the round trip, in milliseconds
+     */
+    public static final long PING_INTERVAL = 2000;
+
+    /**
+     * Messages which replace the previous message of the same type entirely, so only the latest needs handling
+     */
+    private static final Set<Class<? extends Message>> SNAPSHOTS = Set.of(
+            Message.Scores.class, Message.HiScores.class, Message.Channels.class, Message.Users.class);
+
     /**
      * Attached communication listeners listening to messages on this Communicator. Each will be sent any messages.
      */
-    private final List<CommunicationsListener> handlers = new ArrayList<>();
+    private final List<CommunicationsListener> handlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listeners to parsed messages, by the type of message they want
+     */
+    private final Map<Class<? extends Message>, List<ProtocolListener<? extends Message>>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * Listeners to parsed messages which are called on the UI thread, by the type of message they want
+     */
+    private final Map<Class<? extends Message>, List<ProtocolListener<? extends Message>>> uiSubscribers = new ConcurrentHashMap<>();
+
+    /**
+     * Messages waiting to be handed to the UI thread. Any receiving thread adds, only the UI thread removes.
+     */
+    private final ConcurrentLinkedQueue<Message> uiQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether a UI task to empty the queue is already waiting to run
+     */
+    private final AtomicBoolean uiDrainScheduled = new AtomicBoolean();
+
+    /**
+     * Runs tasks on the UI thread
+     */
+    private final Executor ui;
+
+    private volatile WebSocket ws = null;
+
+    /**
+     * Whether the socket is currently open
+     */
+    private volatile boolean connected;
+
+    /**
+     * Whether a reconnect is already scheduled or in progress
+     */
+    private boolean reconnecting;
+
+    /**
+     * Number of failed attempts since the last successful connection
+     */
+    private int attempts;
+
+    /**
+     * Number of successful reconnects
+     */
+    private long reconnects;
+
+    /**
+     * Resumable queries the current scene has sent
+     */
+    private final Set<String> requested = new LinkedHashSet<>();
+
+    /**
+     * The last NICK message sent, if any
+     */
+    private String nickname;
 
-    private WebSocket ws = null;
+    /**
+     * Our name as last confirmed by the server, null until it has been. See learnName.
+     */
+    private volatile String name;
+
+    /**
+     * The features the server has advertised with FEATURES, empty until it does and after a disconnect
+     */
+    private volatile Set<String> features = Set.of();
+
+    /**
+     * Messages waiting for the next flush
+     */
+    private final List<String> outbox = new ArrayList<>();
+
+    /**
+     * Flushes the outgoing queue every tick and runs reconnect attempts
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "communicator-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Counters and latencies for the connection
+     */
+    private final ConnectionMetrics metrics = new ConnectionMetrics();
+
+    /**
+     * Number of messages written to the socket
+     */
+    private long messagesSent;
+
+    /**
+     * Number of messages received from the server
+     */
+    private long messagesReceived;
+
+    /**
+     * Number of messages dropped because a later message made them redundant
+     */
+    private long messagesCoalesced;
+
+    /**
+     * Number of messages for the UI dropped because a later snapshot replaced them
+     */
+    private long messagesSuperseded;
+
+    /**
+     * Number of UI tasks used to hand over messages
+     */
+    private long uiBatches;
+
+    /**
+     * Whether close has been called, after which no reconnect is attempted
+     */
+    private volatile boolean closed;
+
+    /**
+     * Number of flushes that wrote at least one message
+     */
+    private long flushes;
 
     /**
      * Create a new communicator to the given web socket server
@@ -31,65 +220,353 @@ public class Communicator {
      * @param server server to connect to
      */
     public Communicator(String server) {
+        this(server, Platform::runLater);
+    }
+
+    /**
+     * Create a new communicator to the given web socket server, calling UI listeners on the given executor
+     *
+     * @param server server to connect to
+     * @param ui the executor for UI listeners
+     */
+    public Communicator(String server, Executor ui) {
+        this.ui = ui;
 
         try {
             var socketFactory = new WebSocketFactory();
-
-            //Connect to the server
             ws = socketFactory.createSocket(server);
-            ws.connect();
-            logger.info("Connected to " + server);
-
-            //When a message is received, call the receive method
-            ws.addListener(new WebSocketAdapter() {
-                @Override
-                public void onTextMessage(WebSocket websocket, String message) throws Exception {
-                    Communicator.this.receive(websocket, message);
-                }
-                @Override
-                public void onPingFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
-                    logger.info("Ping? Pong!");
-                }
-            });
-
-            //Error handling
-            ws.addListener(new WebSocketAdapter() {
-                @Override
-                public void onTextMessage(WebSocket websocket, String message) throws Exception {
-                    if(message.startsWith("ERROR")) {
-                        logger.error(message);
-                    }
-                }
-                @Override
-                public void handleCallbackError(WebSocket webSocket, Throwable throwable) throws Exception {
-                    logger.error("Callback Error:" + throwable.getMessage());
-                    throwable.printStackTrace();
-                }
-                @Override
-                public void onError(WebSocket webSocket, WebSocketException e) throws Exception {
-                    logger.error("Error:" + e.getMessage());
-                    e.printStackTrace();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid server " + server + ": " + e.getMessage(), e);
+        }
+
+        //When a message is received, call the receive method
+        ws.addListener(new WebSocketAdapter() {
+            @Override
+            public void onTextMessage(WebSocket websocket, String message) throws Exception {
+                Communicator.this.receive(websocket, message);
+            }
+            @Override
+            public void onPingFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
+                logger.debug("Ping? Pong!");
+            }
+            @Override
+            public void onPongFrame(WebSocket webSocket, WebSocketFrame frame) throws Exception {
+                byte[] payload = frame.getPayload();
+                if (payload == null || payload.length != Long.BYTES) return;
+
+                long sent = 0;
+                for (var b : payload) sent = (sent << 8) | (b & 0xFF);
+                metrics.pong(sent);
+            }
+        });
+
+        //Connection state
+        ws.addListener(new WebSocketAdapter() {
+            @Override
+            public void onConnected(WebSocket websocket, Map<String, List<String>> headers) throws Exception {
+                Communicator.this.connected(websocket);
+            }
+            @Override
+            public void onConnectError(WebSocket websocket, WebSocketException e) throws Exception {
+                logger.error("Unable to connect to " + server + ": " + e.getMessage());
+                Communicator.this.disconnected(websocket);
+            }
+            @Override
+            public void onDisconnected(WebSocket websocket, WebSocketFrame serverCloseFrame,
+                    WebSocketFrame clientCloseFrame, boolean closedByServer) throws Exception {
+                logger.warn("Disconnected from " + server);
+                Communicator.this.disconnected(websocket);
+            }
+        });
+
+        //Error handling
+        ws.addListener(new WebSocketAdapter() {
+            @Override
+            public void onTextMessage(WebSocket websocket, String message) throws Exception {
+                if(message.startsWith("ERROR")) {
+                    logger.error(message);
                 }
-            });
+            }
+            @Override
+            public void handleCallbackError(WebSocket webSocket, Throwable throwable) throws Exception {
+                logger.error("Callback Error:" + throwable.getMessage());
+                throwable.printStackTrace();
+            }
+            @Override
+            public void onError(WebSocket webSocket, WebSocketException e) throws Exception {
+                logger.error("Error:" + e.getMessage());
+            }
+        });
+
+        ws.setAutoFlush(false);
+        ws.connectAsynchronously();
+
+        scheduler.scheduleAtFixedRate(this::flush, TICK, TICK, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::ping, PING_INTERVAL, PING_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ping the server with the current time as the payload, so the pong gives the round trip
+     */
+    private void ping() {
+        if (!connected) return;
+
+        long now = System.nanoTime();
+        byte[] payload = new byte[Long.BYTES];
+        for (int i = payload.length - 1; i >= 0; i--) {
+            payload[i] = (byte) now;
+            now >>>= 8;
+        }
+        ws.sendPing(payload);
+    }
 
-        } catch (Exception e){
-            logger.error("Socket error: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * Called when a socket opens. Re-sends the session state if this is a reconnect.
+     * @param websocket the socket that opened
+     */
+    private void connected(WebSocket websocket) {
+        if (websocket != ws) return;
+        logger.info("Connected to " + websocket.getURI());
 
-            Alert error = new Alert(Alert.AlertType.ERROR,"Unable to communicate with the TetrECS server\n\n" + e.getMessage() + "\n\nPlease ensure you are connected to the VPN");
-            error.showAndWait();
-            System.exit(1);
+        List<String> resume = new ArrayList<>();
+        synchronized (outbox) {
+            boolean reconnect = reconnecting;
+            reconnecting = false;
+            attempts = 0;
+            connected = true;
+            if (!reconnect) return;
+
+            reconnects++;
+            if (nickname != null) resume.add(nickname);
+            resume.addAll(requested);
         }
+
+        //Queued normally, so anything the scene already asked for again is coalesced
+        for (var message : resume) send(message);
     }
 
-    /** Send a message to the server
+    /**
+     * Called when a socket closes or fails to open. Schedules the next attempt.
+     * @param websocket the socket that closed
+     */
+    private void disconnected(WebSocket websocket) {
+        long delay;
+
+        synchronized (outbox) {
+            //Each socket reports failing once, ignore anything from sockets already replaced
+            if (websocket != ws || closed) return;
+            connected = false;
+            features = Set.of();
+            metrics.disconnected();
+            reconnecting = true;
+
+            //Full jitter: anywhere between nothing and the capped exponential delay
+            long cap = Math.min(BACKOFF_MAX, BACKOFF_BASE << Math.min(attempts, 16));
+            delay = ThreadLocalRandom.current().nextLong(cap + 1);
+            attempts++;
+        }
+
+        logger.info("Reconnecting in " + delay + "ms");
+        try {
+            scheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            logger.error("Unable to schedule reconnect: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open a fresh socket with the same settings and listeners as the old one
+     */
+    private void reconnect() {
+        try {
+            ws = ws.recreate();
+            ws.setAutoFlush(false);
+            ws.connectAsynchronously();
+        } catch (Exception e) {
+            logger.error("Reconnect failed: " + e.getMessage());
+            disconnected(ws);
+        }
+    }
+
+    /**
+     * Send anything still queued, then disconnect for good
+     */
+    public void close() {
+        closed = true;
+        flush();
+        scheduler.shutdownNow();
+        ws.disconnect();
+    }
+
+    /**
+     * Check whether the socket is currently open
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Get the number of times the connection has been re-established
+     * @return the number of reconnects
+     */
+    public long getReconnects() {
+        synchronized (outbox) { return reconnects; }
+    }
+
+    /** Send a message to the server. The message is queued and written on the next tick.
      *
      * @param message Message to send
      */
     public void send(String message) {
-        logger.info("Sending message: " + message);
+        int space = message.indexOf(' ');
+        String command = space < 0 ? message : message.substring(0, space);
+
+        synchronized (outbox) {
+            //Pending messages this one makes redundant are dropped, each counted, and this one goes at the end
+            int queued = outbox.size();
+            if (QUERIES.contains(command)) {
+                outbox.removeIf(message::equals);
+            } else if (LATEST.contains(command)) {
+                outbox.removeIf((pending) -> pending.startsWith(command + " "));
+            }
+            messagesCoalesced += queued - outbox.size();
+
+            //Remember what to send again after a reconnect
+            if (RESUME.contains(command)) requested.add(message);
+            if (command.equals("NICK")) nickname = message;
+
+            outbox.add(message);
+            if (outbox.size() > MAX_BUFFERED) {
+                logger.warn("Outgoing queue full, dropping " + outbox.remove(0));
+            }
+        }
+    }
+
+    /**
+     * Write every queued message to the socket in one go. While disconnected, messages stay queued.
+     */
+    public void flush() {
+        List<String> messages;
+
+        synchronized (outbox) {
+            if (outbox.isEmpty() || !connected) return;
+            messages = new ArrayList<>(outbox);
+            outbox.clear();
+        }
+
+        try {
+            for (var message : messages) {
+                WireLog.sent(message);
+                writing(message);
+                ws.sendText(message);
+                metrics.sent(message);
+            }
+            ws.flush();
+        } catch (Exception e) {
+            logger.error("Unable to send: " + e.getMessage());
+        }
+
+        synchronized (outbox) {
+            messagesSent += messages.size();
+            flushes++;
+        }
+    }
+
+    /**
+     * Called on the flush thread just before each message is written to the socket, so the answer cannot arrive
+     * first. Does nothing unless overridden.
+     * @param message the message
+     */
+    protected void writing(String message) {
+    }
 
-        ws.sendText(message);
+    /**
+     * Get the number of messages written to the socket
+     * @return the number of messages
+     */
+    public long getMessagesSent() {
+        synchronized (outbox) { return messagesSent; }
+    }
+
+    /**
+     * Get a summary of the connection for the debug overlay
+     * @return the summary
+     */
+    public String summary() {
+        String queue;
+        synchronized (outbox) {
+            queue = String.format("%s, %d reconnects, %d sent in %d flushes, %d coalesced, %d superseded in %d UI batches",
+                    connected ? "Connected" : "Disconnected", reconnects, messagesSent, flushes, messagesCoalesced,
+                    messagesSuperseded, uiBatches);
+        }
+        return queue + "\n" + metrics.summary();
+    }
+
+    /**
+     * Get our name, as last confirmed by the server
+     * @return the name, or null if it has not been confirmed
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Check whether the server has advertised a feature. Servers that advertise nothing, like the university server,
+     * have none.
+     * @param feature the feature
+     * @return whether it has
+     */
+    public boolean hasFeature(String feature) {
+        return features.contains(feature);
+    }
+
+    /**
+     * Get the counters and latencies for the connection
+     * @return the metrics
+     */
+    public ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the number of messages received from the server
+     * @return the number of messages
+     */
+    public long getMessagesReceived() {
+        synchronized (outbox) { return messagesReceived; }
+    }
+
+    /**
+     * Get the number of messages dropped because a later message made them redundant
+     * @return the number of messages
+     */
+    public long getMessagesCoalesced() {
+        synchronized (outbox) { return messagesCoalesced; }
+    }
+
+    /**
+     * Get the number of messages for the UI dropped because a later snapshot replaced them
+     * @return the number of messages
+     */
+    public long getMessagesSuperseded() {
+        synchronized (outbox) { return messagesSuperseded; }
+    }
+
+    /**
+     * Get the number of UI tasks used to hand over messages
+     * @return the number of tasks
+     */
+    public long getUiBatches() {
+        synchronized (outbox) { return uiBatches; }
+    }
+
+    /**
+     * Get the number of flushes that wrote at least one message
+     * @return the number of flushes
+     */
+    public long getFlushes() {
+        synchronized (outbox) { return flushes; }
     }
 
     /**
@@ -100,11 +577,36 @@ public class Communicator {
         this.handlers.add(listener);
     }
 
+    /**
+     * Add a new listener to receive one type of parsed message from the server
+     * @param type the type of message, for example Message.Scores.class
+     * @param listener the listener to add
+     * @param <T> the type of message
+     */
+    public <T extends Message> void subscribe(Class<T> type, ProtocolListener<T> listener) {
+        subscribers.computeIfAbsent(type, (key) -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * Add a new listener to receive one type of parsed message from the server on the UI thread
+     * @param type the type of message, for example Message.Scores.class
+     * @param listener the listener to add
+     * @param <T> the type of message
+     */
+    public <T extends Message> void subscribeUi(Class<T> type, ProtocolListener<T> listener) {
+        uiSubscribers.computeIfAbsent(type, (key) -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
     /**
      * Clear all current listeners
      */
     public void clearListeners() {
         this.handlers.clear();
+        this.subscribers.clear();
+        this.uiSubscribers.clear();
+
+        //A new scene will ask for what it needs
+        synchronized (outbox) { requested.clear(); }
     }
 
     /** Receive a message from the server. Relay to any attached listeners
@@ -113,11 +615,99 @@ public class Communicator {
      * @param message the message that was received
      */
     private void receive(WebSocket websocket, String message) {
-        logger.info("Received: " + message);
+        WireLog.received(message);
+        synchronized (outbox) { messagesReceived++; }
 
         for(CommunicationsListener handler : handlers) {
             handler.receiveCommunication(message);
         }
+
+        //Parse the frame once and hand it to everyone subscribed to its type
+        var parsed = Protocol.parse(message);
+        metrics.received(parsed.getCommand(), message);
+        learnName(parsed);
+        if (parsed.getCommand().equals("FEATURES")) {
+            features = Set.copyOf(Message.split(((Message.Text) parsed).getPayload(), " "));
+        }
+        var listeners = subscribers.get(parsed.getClass());
+        if (listeners != null) dispatch(parsed, listeners);
+
+        //Queue it for the UI, scheduling a drain unless one is already waiting
+        if (uiSubscribers.containsKey(parsed.getClass())) {
+            uiQueue.add(parsed);
+            if (uiDrainScheduled.compareAndSet(false, true)) ui.execute(this::drainUi);
+        }
+    }
+
+    /**
+     * Keep track of our name. A NICK from the server confirms it. A server that never sends one still lists us in
+     * USERS: a listed name matching the last NICK we sent is ours, and so is the only name in a channel of one, which
+     * is how a host first sees its channel.
+     * @param parsed the message received
+     */
+    private void learnName(Message parsed) {
+        if (parsed.getCommand().equals("NICK")) {
+            name = ((Message.Text) parsed).getPayload().trim();
+            return;
+        }
+        if (name != null || !(parsed instanceof Message.Users)) return;
+
+        var users = ((Message.Users) parsed).getUsers();
+        String requested;
+        synchronized (outbox) {
+            requested = nickname == null ? null : nickname.substring("NICK".length()).trim();
+        }
+
+        if (requested != null && users.contains(requested)) name = requested;
+        else if (users.size() == 1) name = users.get(0);
+        if (name != null) logger.info("Taking our name from the user list: " + name);
+    }
+
+    /**
+     * Hand every queued message to the UI listeners, skipping snapshots that a later one in the batch replaces
+     */
+    private void drainUi() {
+        //Messages arriving from now on need another drain
+        uiDrainScheduled.set(false);
+
+        List<Message> batch = new ArrayList<>();
+        Message message;
+        while ((message = uiQueue.poll()) != null) batch.add(message);
+
+        //Where the last snapshot of each type is
+        Map<Class<? extends Message>, Integer> latest = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (SNAPSHOTS.contains(batch.get(i).getClass())) latest.put(batch.get(i).getClass(), i);
+        }
+
+        int superseded = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            var next = batch.get(i);
+            if (SNAPSHOTS.contains(next.getClass()) && latest.get(next.getClass()) != i) {
+                superseded++;
+                continue;
+            }
+
+            var listeners = uiSubscribers.get(next.getClass());
+            if (listeners != null) dispatch(next, listeners);
+        }
+
+        synchronized (outbox) {
+            messagesSuperseded += superseded;
+            uiBatches++;
+        }
+    }
+
+    /**
+     * Hand a parsed message to its listeners
+     * @param message the message
+     * @param listeners the listeners subscribed to its type
+     */
+    @SuppressWarnings("unchecked")
+    private void dispatch(Message message, List<ProtocolListener<? extends Message>> listeners) {
+        for (var listener : listeners) {
+            ((ProtocolListener<Message>) listener).receive(message);
+        }
     }
 
 }
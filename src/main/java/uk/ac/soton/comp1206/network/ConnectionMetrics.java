@@ -0,0 +1,253 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import uk.ac.soton.comp1206.utility.LatencyHistogram;
+
+/**
+ * Connection health for a Communicator: the ping round trip, messages and bytes per command in each direction, and
+ * how long the server takes to answer PIECE, SCORES and HISCORES. Comparing the answer times with the ping shows
+ * whether slowness is in the network or in the server.
+ *
+ * Called from the communicator's threads and read from the UI thread, so every method is synchronized.
+ */
+public class ConnectionMetrics {
+
+    /**
+     * Requests whose answer has the same command, so they can be matched in order
+     */
+    public static final Set<String> TIMED = Set.of("PIECE", "SCORES", "HISCORES");
+
+    /**
+     * The most commands counted separately, anything beyond is counted as OTHER
+     */
+    private static final int MAX_COMMANDS = 64;
+
+    /**
+     * The most unanswered requests remembered per command
+     */
+    private static final int MAX_PENDING = 64;
+
+    /**
+     * The number of whole seconds the byte rates are averaged over
+     */
+    private static final int RATE_WINDOW = 5;
+
+    private static final int SENT = 0, SENT_BYTES = 1, RECEIVED = 2, RECEIVED_BYTES = 3;
+
+    /**
+     * Counters for each command: messages and bytes sent, messages and bytes received
+     */
+    private final Map<String, long[]> commands = new HashMap<>();
+
+    /**
+     * The ping round trip in microseconds
+     */
+    private final LatencyHistogram ping = new LatencyHistogram("us");
+
+    /**
+     * The time from sending a request to receiving its answer in microseconds, by command
+     */
+    private final Map<String, LatencyHistogram> responses = new HashMap<>();
+
+    /**
+     * When each unanswered request was sent, by command
+     */
+    private final Map<String, ArrayDeque<Long>> pending = new HashMap<>();
+
+    /**
+     * The time of the last ping answered, in nanoseconds
+     */
+    private long lastPing;
+
+    /**
+     * Bytes received and sent in each of the last few seconds, and which second each slot holds
+     */
+    private final long[] secondBytesIn = new long[RATE_WINDOW + 1];
+    private final long[] secondBytesOut = new long[RATE_WINDOW + 1];
+    private final long[] seconds = new long[RATE_WINDOW + 1];
+
+    /**
+     * Create empty metrics
+     */
+    public ConnectionMetrics() {
+        for (var command : TIMED) {
+            responses.put(command, new LatencyHistogram("us"));
+            pending.put(command, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Count a message written to the socket
+     * @param message the message
+     */
+    public synchronized void sent(String message) {
+        String command = command(message);
+        var counters = counters(command);
+        counters[SENT]++;
+        int bytes = utf8Length(message);
+        counters[SENT_BYTES] += bytes;
+        secondBytesOut[slot(System.nanoTime())] += bytes;
+
+        var queue = pending.get(command);
+        if (queue != null) {
+            if (queue.size() == MAX_PENDING) queue.poll();
+            queue.add(System.nanoTime());
+        }
+    }
+
+    /**
+     * Count a message from the server, matching it to the oldest request it answers
+     * @param command the command of the message
+     * @param message the whole message
+     */
+    public synchronized void received(String command, String message) {
+        var counters = counters(command);
+        counters[RECEIVED]++;
+        int bytes = utf8Length(message);
+        counters[RECEIVED_BYTES] += bytes;
+        secondBytesIn[slot(System.nanoTime())] += bytes;
+
+        var queue = pending.get(command);
+        if (queue != null && !queue.isEmpty()) {
+            responses.get(command).record((System.nanoTime() - queue.poll()) / 1000);
+        }
+    }
+
+    /**
+     * Record the answer to a ping
+     * @param sentTime the System.nanoTime() the ping was sent, from its payload
+     */
+    public synchronized void pong(long sentTime) {
+        lastPing = System.nanoTime();
+        ping.record((lastPing - sentTime) / 1000);
+    }
+
+    /**
+     * Forget requests still waiting for an answer, which will never come after the connection drops
+     */
+    public synchronized void disconnected() {
+        for (var queue : pending.values()) queue.clear();
+    }
+
+    /**
+     * Get the ping round trips
+     * @return the percentiles in microseconds
+     */
+    public synchronized String getPing() {
+        return ping.toString();
+    }
+
+    /**
+     * Get the number of messages sent for a command
+     * @param command the command
+     * @return the number of messages
+     */
+    public synchronized long getSent(String command) {
+        var counters = commands.get(command);
+        return counters == null ? 0 : counters[SENT];
+    }
+
+    /**
+     * Get the number of messages received for a command
+     * @param command the command
+     * @return the number of messages
+     */
+    public synchronized long getReceived(String command) {
+        var counters = commands.get(command);
+        return counters == null ? 0 : counters[RECEIVED];
+    }
+
+    /**
+     * Get a summary for the debug overlay and the metrics dump. Rates are over the last few whole seconds, so reading
+     * the summary changes nothing and any number of readers see the same rates.
+     * @return the summary
+     */
+    public synchronized String summary() {
+        long now = System.nanoTime();
+        long second = Math.floorDiv(now, 1000000000L);
+
+        //The current second is still filling, so it is left out
+        long bytesIn = 0, bytesOut = 0;
+        for (var i = 0; i < seconds.length; i++) {
+            if (seconds[i] < second && seconds[i] >= second - RATE_WINDOW) {
+                bytesIn += secondBytesIn[i];
+                bytesOut += secondBytesOut[i];
+            }
+        }
+
+        var text = new StringBuilder(String.format("In %.1f KB/s, out %.1f KB/s%n",
+                bytesIn / 1024.0 / RATE_WINDOW, bytesOut / 1024.0 / RATE_WINDOW));
+
+        text.append("Ping ").append(ping);
+        if (lastPing != 0) text.append(String.format(", last %ds ago", (now - lastPing) / 1000000000));
+        text.append("\n");
+
+        for (var command : TIMED) {
+            text.append(command).append(" answer ").append(responses.get(command)).append("\n");
+        }
+
+        //Busiest commands first
+        var busiest = new ArrayList<>(commands.entrySet());
+        busiest.sort((a, b) -> Long.compare(b.getValue()[SENT] + b.getValue()[RECEIVED], a.getValue()[SENT] + a.getValue()[RECEIVED]));
+        for (var entry : busiest) {
+            var counters = entry.getValue();
+            text.append(String.format("%s out %d (%d B) in %d (%d B)%n", entry.getKey(),
+                    counters[SENT], counters[SENT_BYTES], counters[RECEIVED], counters[RECEIVED_BYTES]));
+        }
+
+        return text.toString().stripTrailing();
+    }
+
+    /**
+     * The slot counting the bytes of the given time's second, emptied first if it still holds an older second
+     */
+    private int slot(long now) {
+        long second = Math.floorDiv(now, 1000000000L);
+        int slot = (int) Math.floorMod(second, (long) seconds.length);
+        if (seconds[slot] != second) {
+            seconds[slot] = second;
+            secondBytesIn[slot] = 0;
+            secondBytesOut[slot] = 0;
+        }
+        return slot;
+    }
+
+    /**
+     * The counters for a command, sharing one entry once there are too many different commands
+     */
+    private long[] counters(String command) {
+        var counters = commands.get(command);
+        if (counters != null) return counters;
+
+        if (commands.size() >= MAX_COMMANDS) command = "OTHER";
+        return commands.computeIfAbsent(command, (key) -> new long[4]);
+    }
+
+    /**
+     * The command at the start of a message
+     */
+    private static String command(String message) {
+        int space = message.indexOf(' ');
+        return space < 0 ? message : message.substring(0, space);
+    }
+
+    /**
+     * The number of bytes a string takes in UTF-8, without encoding it
+     */
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c)) { length += 4; i++; }
+            else length += 3;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,181 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The online high scores, kept between visits to the scores screen. The cached list is shown straight away and only
+ * asked for again once it is older than the TTL. While a HISCORES request is waiting for its answer no other is sent.
+ *
+ * Scores submitted from here are merged into the list at once, and kept merged until the server's list includes them.
+ *
+ * The Communicator drops its listeners whenever the scene changes, so the cache listens again each time show is
+ * called. Used on the UI thread only.
+ */
+public class HiScoreCache {
+
+    private static final Logger logger = LogManager.getLogger(HiScoreCache.class);
+
+    /**
+     * How long to wait for an answer before another request may be sent, in milliseconds
+     */
+    private static final long REQUEST_TIMEOUT = 5000;
+
+    private final Communicator communicator;
+
+    /**
+     * How long the list stays fresh, in nanoseconds
+     */
+    private final long ttl;
+
+    /**
+     * The scores, best first
+     */
+    private final List<Message.Entry> scores = new ArrayList<>();
+
+    /**
+     * Scores submitted but not yet seen in a list from the server, with when they were submitted
+     */
+    private final List<Message.Entry> pending = new ArrayList<>();
+    private final List<Long> pendingSince = new ArrayList<>();
+
+    /**
+     * When the list last came from the server, or 0 if it never has
+     */
+    private long updated;
+
+    /**
+     * When the request waiting for an answer was sent, or 0 if there is none
+     */
+    private long requested;
+
+    /**
+     * Who is shown the list, the current scores screen
+     */
+    private Consumer<List<Message.Entry>> listener;
+
+    private int hits;
+    private int requests;
+
+    /**
+     * Create a cache
+     * @param communicator the communicator to ask
+     * @param ttl how long a list stays fresh, in milliseconds
+     */
+    public HiScoreCache(Communicator communicator, long ttl) {
+        this.communicator = communicator;
+        this.ttl = ttl * 1000000;
+    }
+
+    /**
+     * Show the scores to a listener: straight away if there are any cached, and again whenever they change. Asks the
+     * server if the cached list is stale. Replaces any previous listener.
+     * @param listener the listener, called on the UI thread
+     */
+    public void show(Consumer<List<Message.Entry>> listener) {
+        this.listener = listener;
+        communicator.subscribeUi(Message.HiScores.class, this::receive);
+
+        if (updated != 0 || !pending.isEmpty()) listener.accept(getScores());
+        refresh();
+    }
+
+    /**
+     * Ask the server for the scores, unless the cached list is still fresh or a request is already waiting
+     */
+    public void refresh() {
+        long now = System.nanoTime();
+
+        if (updated != 0 && now - updated < ttl) {
+            hits++;
+            return;
+        }
+        if (requested != 0 && now - requested < REQUEST_TIMEOUT * 1000000) return;
+
+        requested = now;
+        requests++;
+        communicator.send("HISCORES");
+    }
+
+    /**
+     * Submit a score to the server, and show it in the list straight away
+     * @param name the name
+     * @param score the score
+     */
+    public void submit(String name, int score) {
+        var entry = new Message.Entry(name, score);
+        pending.add(entry);
+        pendingSince.add(System.nanoTime());
+        insert(entry);
+
+        communicator.send("HISCORE " + name + ":" + score);
+        notifyListener();
+    }
+
+    /**
+     * Get the cached scores, best first
+     * @return the scores
+     */
+    public List<Message.Entry> getScores() {
+        return Collections.unmodifiableList(new ArrayList<>(scores));
+    }
+
+    /**
+     * Get a summary of how often the cache answered without asking the server
+     * @return the summary
+     */
+    public String summary() {
+        return String.format("hiscores: %d cached, %d requested", hits, requests);
+    }
+
+    /**
+     * Take a new list from the server, keeping any submitted scores it does not show yet
+     */
+    private void receive(Message.HiScores message) {
+        long now = System.nanoTime();
+        updated = now;
+        requested = 0;
+
+        scores.clear();
+        scores.addAll(message.getScores());
+        scores.sort((a, b) -> Integer.compare(b.getScore(), a.getScore()));
+
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            var entry = pending.get(i);
+            if (contains(entry) || now - pendingSince.get(i) > ttl) {
+                pending.remove(i);
+                pendingSince.remove(i);
+            } else {
+                insert(entry);
+            }
+        }
+
+        logger.info("Cached " + scores.size() + " high scores");
+        notifyListener();
+    }
+
+    private boolean contains(Message.Entry entry) {
+        for (var score : scores) {
+            if (score.getScore() == entry.getScore() && score.getName().equals(entry.getName())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Put a score into the list, after any equal scores
+     */
+    private void insert(Message.Entry entry) {
+        int index = 0;
+        while (index < scores.size() && scores.get(index).getScore() >= entry.getScore()) index++;
+        scores.add(index, entry);
+    }
+
+    private void notifyListener() {
+        if (listener != null) listener.accept(getScores());
+    }
+}
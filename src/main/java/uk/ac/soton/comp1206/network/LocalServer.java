@@ -0,0 +1,617 @@
+package uk.ac.soton.comp1206.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.PieceGenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A TetrECS server that runs inside the client, so the lobby and multiplayer can be used and benchmarked without the
+ * university server. It speaks just enough of the web socket protocol for the Communicator: text frames, ping and
+ * close, no extensions.
+ *
+ * Start the game with -Dtetrecs.server=local to use one, or run this class on its own with an optional port.
+ */
+public class LocalServer {
+
+    private static final Logger logger = LogManager.getLogger(LocalServer.class);
+
+    /**
+     * The GUID every web socket server appends to the client key when accepting a connection
+     */
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    /**
+     * The number of high scores returned by HISCORES
+     */
+    public static final int HISCORES = 10;
+
+    /**
+     * The largest frame accepted from a client, in bytes
+     */
+    private static final int MAX_FRAME = 1 << 20;
+
+    /**
+     * The most frames waiting to be written to a client before it is disconnected for not keeping up
+     */
+    private static final int MAX_QUEUED = 4096;
+
+    /**
+     * Queued after a client's last frame to stop its writer
+     */
+    private static final byte[] END = new byte[0];
+
+    private final ServerSocket serverSocket;
+
+    /**
+     * The open channels by name, in the order they were created
+     */
+    private final Map<String, Channel> channels = new LinkedHashMap<>();
+
+    /**
+     * Every connected client
+     */
+    private final List<Client> clients = new ArrayList<>();
+
+    /**
+     * The high score table, as name:score entries
+     */
+    private final List<String> hiScores = new ArrayList<>();
+
+    /**
+     * Used to seed each channel's piece sequence
+     */
+    private final SplittableRandom random = new SplittableRandom();
+
+    /**
+     * Used to give each client a default nickname
+     */
+    private int guests;
+
+    private volatile boolean running = true;
+
+    /**
+     * A game lobby. Every player in a started channel is dealt the same sequence of pieces.
+     */
+    private static class Channel {
+        final String name;
+        final List<Client> members = new ArrayList<>();
+        final List<Integer> pieces = new ArrayList<>();
+        final PieceGenerator generator;
+        boolean started;
+
+        Channel(String name, long seed) {
+            this.name = name;
+            this.generator = PieceGenerator.uniform(seed);
+        }
+
+        int piece(int index) {
+            while (pieces.size() <= index) pieces.add(generator.next());
+            return pieces.get(index);
+        }
+    }
+
+    /**
+     * Start a server on the given port of the loopback address
+     * @param port the port, or 0 for any free port
+     * @throws IOException if the port cannot be opened
+     */
+    public LocalServer(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(this::accept, "local-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        logger.info("Local server listening on " + getUrl());
+    }
+
+    /**
+     * Run a local server on its own
+     * @param args an optional port, 9700 by default
+     * @throws Exception if the server cannot start
+     */
+    public static void main(String[] args) throws Exception {
+        new LocalServer(args.length > 0 ? Integer.parseInt(args[0]) : 9700);
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Get the address clients should connect to
+     * @return the web socket URL
+     */
+    public String getUrl() {
+        return "ws://localhost:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stop accepting clients and disconnect everyone
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.error("Unable to close server: " + e.getMessage());
+        }
+
+        List<Client> connected;
+        synchronized (this) { connected = new ArrayList<>(clients); }
+        for (var client : connected) client.close();
+    }
+
+    /**
+     * Accept connections until stopped. Each client is read on its own thread and written to by another, so a slow
+     * client never holds up the server.
+     */
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+
+                Thread thread = new Thread(() -> new Client(socket).run(), "local-server-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (running) logger.error("Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Handle one message from a client. Replies are only queued, so nothing here waits on a socket.
+     * @param client the client
+     * @param message the message
+     */
+    private synchronized void handle(Client client, String message) {
+        int space = message.indexOf(' ');
+        String command = space < 0 ? message : message.substring(0, space);
+        String payload = space < 0 ? "" : message.substring(space + 1).trim();
+        Channel channel = client.channel;
+
+        switch (command) {
+            case "LIST" -> client.send("CHANNELS " + String.join("\n", channels.keySet()));
+            case "CREATE" -> {
+                if (payload.isEmpty() || channels.containsKey(payload)) {
+                    client.send("ERROR Channel " + payload + " already exists");
+                } else {
+                    channels.put(payload, new Channel(payload, random.nextLong()));
+                    join(client, payload);
+                    client.send("HOST");
+                    pushChannels();
+                }
+            }
+            case "JOIN" -> {
+                var target = channels.get(payload);
+                if (target == null) client.send("ERROR No such channel " + payload);
+                else if (target.started) client.send("ERROR Game already started in " + payload);
+                else join(client, payload);
+            }
+            case "PART" -> {
+                part(client);
+                client.send("PARTED");
+            }
+            case "NICK" -> {
+                if (payload.isEmpty() || payload.contains(":")) {
+                    client.send("ERROR Invalid nickname");
+                } else {
+                    client.name = payload;
+                    client.send("NICK " + payload);
+                    if (channel != null) broadcast(channel, "USERS " + users(channel), client);
+                }
+            }
+            case "USERS" -> {
+                if (channel != null) client.send("USERS " + users(channel));
+            }
+            case "MSG" -> {
+                if (channel != null) broadcast(channel, "MSG " + client.name + ":" + payload, null);
+            }
+            case "START" -> {
+                if (channel == null || channel.members.get(0) != client) {
+                    client.send("ERROR You are not the host");
+                } else if (!channel.started) {
+                    channel.started = true;
+                    for (var member : channel.members) member.reset();
+                    broadcast(channel, "START", null);
+                }
+            }
+            case "PIECE" -> {
+                if (channel != null && channel.started) client.send("PIECE " + channel.piece(client.pieces++));
+            }
+            case "BOARD" -> {
+                if (channel != null) broadcast(channel, "BOARD " + client.name + ":" + payload, client);
+            }
+            case "SCORE" -> client.score = parse(payload, client.score);
+            case "LIVES" -> client.lives = parse(payload, client.lives);
+            case "DIE" -> client.dead = true;
+            case "SCORES" -> {
+                if (channel != null) client.send("SCORES " + scores(channel));
+            }
+            case "HISCORES" -> client.send("HISCORES " + String.join("\n", hiScores));
+            case "HISCORE" -> {
+                int colon = payload.lastIndexOf(':');
+                int score = colon < 0 ? -1 : parse(payload.substring(colon + 1), -1);
+                if (score < 0) {
+                    client.send("ERROR Invalid score " + payload);
+                } else {
+                    addHiScore(payload.substring(0, colon), score);
+                    client.send("NEWSCORE " + payload);
+                }
+            }
+            default -> client.send("ERROR Unknown command " + (command.length() > 32 ? command.substring(0, 32) : command));
+        }
+    }
+
+    /**
+     * Move a client into a channel, leaving any channel it was in
+     * @param client the client
+     * @param name the channel name
+     */
+    private void join(Client client, String name) {
+        part(client);
+
+        var channel = channels.get(name);
+        channel.members.add(client);
+        client.channel = channel;
+        client.send("JOIN " + name);
+        broadcast(channel, "USERS " + users(channel), null);
+    }
+
+    /**
+     * Take a client out of its channel. Empty channels are closed and the next player becomes host.
+     * @param client the client
+     */
+    private void part(Client client) {
+        var channel = client.channel;
+        if (channel == null) return;
+
+        boolean host = channel.members.get(0) == client;
+        channel.members.remove(client);
+        client.channel = null;
+
+        if (channel.members.isEmpty()) {
+            channels.remove(channel.name);
+            pushChannels();
+        } else {
+            if (host && !channel.started) channel.members.get(0).send("HOST");
+            broadcast(channel, "USERS " + users(channel), null);
+        }
+    }
+
+    /**
+     * Tell everyone browsing the lobby that the list of channels has changed, so they need not poll for it
+     */
+    private void pushChannels() {
+        String message = "CHANNELS " + String.join("\n", channels.keySet());
+        for (var client : clients) {
+            if (client.channel == null) client.send(message);
+        }
+    }
+
+    /**
+     * Send a message to everyone in a channel
+     * @param channel the channel
+     * @param message the message
+     * @param except a client to leave out, or null
+     */
+    private void broadcast(Channel channel, String message, Client except) {
+        for (var member : channel.members) {
+            if (member != except) member.send(message);
+        }
+    }
+
+    /**
+     * The nicknames in a channel, one per line
+     */
+    private String users(Channel channel) {
+        var names = new ArrayList<String>();
+        for (var member : channel.members) names.add(member.name);
+        return String.join("\n", names);
+    }
+
+    /**
+     * The name:score:lives|DEAD of everyone in a channel, one per line
+     */
+    private String scores(Channel channel) {
+        var lines = new ArrayList<String>();
+        for (var member : channel.members) {
+            lines.add(member.name + ":" + member.score + ":" + (member.dead ? "DEAD" : member.lives));
+        }
+        return String.join("\n", lines);
+    }
+
+    /**
+     * Insert a score into the high score table, keeping the best HISCORES
+     */
+    private void addHiScore(String name, int score) {
+        int index = 0;
+        while (index < hiScores.size() && parse(hiScores.get(index).substring(hiScores.get(index).lastIndexOf(':') + 1), 0) >= score) {
+            index++;
+        }
+        hiScores.add(index, name + ":" + score);
+        if (hiScores.size() > HISCORES) hiScores.remove(HISCORES);
+    }
+
+    /**
+     * Parse a number sent by a client
+     */
+    private static int parse(String value, int fallback) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * A connected client and its web socket
+     */
+    private class Client {
+
+        private final Socket socket;
+        private OutputStream out;
+
+        /**
+         * Frames waiting for the writer thread
+         */
+        private final BlockingQueue<byte[]> outbox = new LinkedBlockingQueue<>(MAX_QUEUED);
+
+        String name;
+        Channel channel;
+        int score;
+        int lives;
+        int pieces;
+        boolean dead;
+
+        Client(Socket socket) {
+            this.socket = socket;
+        }
+
+        /**
+         * Clear the game state when a game starts
+         */
+        void reset() {
+            score = 0;
+            lives = 3;
+            pieces = 0;
+            dead = false;
+        }
+
+        /**
+         * Complete the handshake, start the writer, then read frames until the socket closes
+         */
+        void run() {
+            Thread writer = null;
+            try {
+                var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new BufferedOutputStream(socket.getOutputStream());
+                if (!handshake(in)) return;
+
+                writer = new Thread(this::writeFrames, "local-server-writer");
+                writer.setDaemon(true);
+                writer.start();
+
+                synchronized (LocalServer.this) {
+                    //Every client here is this game, so boards can be sent as deltas
+                    send("FEATURES " + BoardSync.FEATURE);
+                    name = "guest" + (++guests);
+                    clients.add(this);
+                }
+                reset();
+
+                String message;
+                while ((message = readMessage(in)) != null) {
+                    handle(this, message);
+                }
+            } catch (IOException e) {
+                logger.debug("Client disconnected: " + e.getMessage());
+            } finally {
+                synchronized (LocalServer.this) {
+                    part(this);
+                    clients.remove(this);
+                }
+
+                //The writer closes the socket once everything already queued is written
+                if (writer == null || !outbox.offer(END)) close();
+            }
+        }
+
+        /**
+         * Write queued frames until the end is queued, flushing once for everything that was waiting
+         */
+        private void writeFrames() {
+            var frames = new ArrayList<byte[]>();
+            try {
+                boolean end = false;
+                while (!end) {
+                    frames.add(outbox.take());
+                    outbox.drainTo(frames);
+
+                    for (var frame : frames) {
+                        if (frame == END) {
+                            end = true;
+                            break;
+                        }
+                        out.write(frame);
+                    }
+                    out.flush();
+                    frames.clear();
+                }
+            } catch (IOException e) {
+                logger.debug("Unable to send to " + name + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Read the HTTP upgrade request and accept it
+         * @return false if the request is not a web socket upgrade
+         */
+        private boolean handshake(InputStream in) throws IOException {
+            String key = null;
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                    key = line.substring(colon + 1).trim();
+                }
+            }
+
+            if (key == null) {
+                write(("HTTP/1.1 400 Bad Request\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                return false;
+            }
+
+            write(("HTTP/1.1 101 Switching Protocols\r\n"
+                    + "Upgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + accept(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            return true;
+        }
+
+        /**
+         * Read frames until a whole text message has arrived, answering pings and closes on the way
+         * @return the message, or null once the client has closed
+         */
+        private String readMessage(DataInputStream in) throws IOException {
+            var message = new ByteArrayOutputStream();
+
+            while (true) {
+                int first = in.read();
+                if (first < 0) return null;
+                int second = in.readUnsignedByte();
+
+                boolean fin = (first & 0x80) != 0;
+                int opcode = first & 0x0F;
+                long length = second & 0x7F;
+                if (length == 126) length = in.readUnsignedShort();
+                else if (length == 127) length = in.readLong();
+                if (length < 0 || length > MAX_FRAME) throw new IOException("Frame too large");
+
+                byte[] mask = new byte[4];
+                if ((second & 0x80) != 0) in.readFully(mask);
+                byte[] data = new byte[(int) length];
+                in.readFully(data);
+                for (int i = 0; i < data.length; i++) data[i] ^= mask[i & 3];
+
+                switch (opcode) {
+                    case 0x8 -> {
+                        queue(0x8, data);
+                        return null;
+                    }
+                    case 0x9 -> queue(0xA, data);
+                    case 0x0, 0x1 -> {
+                        message.write(data);
+                        if (fin) return message.toString(StandardCharsets.UTF_8);
+                    }
+                    default -> { }
+                }
+            }
+        }
+
+        /**
+         * Send a text message to this client
+         * @param message the message
+         */
+        void send(String message) {
+            queue(0x1, message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Queue one frame for the writer. A client too far behind is disconnected rather than queued forever.
+         */
+        private void queue(int opcode, byte[] data) {
+            if (!outbox.offer(frame(opcode, data))) {
+                logger.warn("Disconnecting " + name + ", " + MAX_QUEUED + " frames behind");
+                close();
+            }
+        }
+
+        /**
+         * Build one unmasked frame
+         */
+        private byte[] frame(int opcode, byte[] data) {
+            var frame = new ByteArrayOutputStream(data.length + 10);
+            frame.write(0x80 | opcode);
+            if (data.length < 126) {
+                frame.write(data.length);
+            } else if (data.length < 65536) {
+                frame.write(126);
+                frame.write(data.length >>> 8);
+                frame.write(data.length);
+            } else {
+                frame.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) frame.write((int) ((long) data.length >>> shift));
+            }
+            frame.write(data, 0, data.length);
+            return frame.toByteArray();
+        }
+
+        /**
+         * Write straight to the socket, only used for the handshake before the writer starts
+         */
+        private void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            out.flush();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close client: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read one CRLF terminated line of the HTTP request
+     */
+    private static String readLine(InputStream in) throws IOException {
+        var line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) throw new IOException("Connection closed during handshake");
+            if (c != '\r') line.append((char) c);
+            if (line.length() > 8192) throw new IOException("Header too long");
+        }
+        return line.toString();
+    }
+
+    /**
+     * The Sec-WebSocket-Accept value for a client key
+     */
+    private static String accept(String key) {
+        try {
+            var sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64.getEncoder().encodeToString(sha1.digest((key + HANDSHAKE_GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message received from the server, parsed once into a typed form by the Protocol. Each kind of message the game
+ * reacts to has its own subclass, everything else is a Text message holding the command and the rest of the frame.
+ */
+public abstract class Message {
+
+	/**
+	 * The command at the start of the frame, for example SCORES
+	 */
+	private final String command;
+
+	/**
+	 * Create a new message
+	 * @param command the command
+	 */
+	protected Message(String command) {
+		this.command = command;
+	}
+
+	/**
+	 * Get the command this message was sent with
+	 * @return the command
+	 */
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * A message without a typed form: JOIN, HOST, PARTED, NICK, START, ERROR and anything unknown
+	 */
+	public static class Text extends Message {
+
+		private final String payload;
+
+		public Text(String command, String payload) {
+			super(command);
+			this.payload = payload;
+		}
+
+		/**
+		 * Get the rest of the frame after the command
+		 * @return the payload, empty if there was none
+		 */
+		public String getPayload() { return payload; }
+	}
+
+	/**
+	 * A name and a score, as sent in HISCORES
+	 */
+	public static class Entry {
+
+		private final String name;
+
+		private final int score;
+
+		public Entry(String name, int score) {
+			this.name = name;
+			this.score = score;
+		}
+
+		/**
+		 * Get the name of the player
+		 * @return the name
+		 */
+		public String getName() { return name; }
+
+		/**
+		 * Get the score
+		 * @return the score
+		 */
+		public int getScore() { return score; }
+	}
+
+	/**
+	 * A player in a multiplayer game, as sent in SCORES
+	 */
+	public static class PlayerScore extends Entry {
+
+		/**
+		 * The lives left, or -1 if the player is dead
+		 */
+		private final int lives;
+
+		public PlayerScore(String name, int score, int lives) {
+			super(name, score);
+			this.lives = lives;
+		}
+
+		/**
+		 * Get the lives left
+		 * @return the lives, or -1 if the player is dead
+		 */
+		public int getLives() { return lives; }
+
+		/**
+		 * Check whether the player has run out of lives
+		 * @return whether the player is dead
+		 */
+		public boolean isDead() { return lives < 0; }
+	}
+
+	/**
+	 * SCORES - the players of the current game
+	 */
+	public static class Scores extends Message {
+
+		private final List<PlayerScore> players;
+
+		public Scores(List<PlayerScore> players) {
+			super("SCORES");
+			this.players = Collections.unmodifiableList(players);
+		}
+
+		/**
+		 * Get the players of the game
+		 * @return the players, which cannot be changed
+		 */
+		public List<PlayerScore> getPlayers() { return players; }
+	}
+
+	/**
+	 * HISCORES - the online high scores
+	 */
+	public static class HiScores extends Message {
+
+		private final List<Entry> scores;
+
+		public HiScores(List<Entry> scores) {
+			super("HISCORES");
+			this.scores = Collections.unmodifiableList(scores);
+		}
+
+		/**
+		 * Get the high scores, in the order the server sent them
+		 * @return the scores, which cannot be changed
+		 */
+		public List<Entry> getScores() { return scores; }
+	}
+
+	/**
+	 * PIECE - the next piece
+	 */
+	public static class Piece extends Message {
+
+		private final int value;
+
+		public Piece(int value) {
+			super("PIECE");
+			this.value = value;
+		}
+
+		/**
+		 * Get the number of the piece
+		 * @return the piece number
+		 */
+		public int getValue() { return value; }
+	}
+
+	/**
+	 * BOARD - the board of another player, as a BoardSync payload
+	 */
+	public static class Board extends Message {
+
+		private final String player;
+
+		private final String board;
+
+		public Board(String player, String board) {
+			super("BOARD");
+			this.player = player;
+			this.board = board;
+		}
+
+		/**
+		 * Get the player whose board this is
+		 * @return the name of the player
+		 */
+		public String getPlayer() { return player; }
+
+		/**
+		 * Get the board, as a BoardSync keyframe or delta
+		 * @return the board payload
+		 */
+		public String getBoard() { return board; }
+	}
+
+	/**
+	 * MSG - a chat message
+	 */
+	public static class Chat extends Message {
+
+		private final String player;
+
+		private final String text;
+
+		public Chat(String player, String text) {
+			super("MSG");
+			this.player = player;
+			this.text = text;
+		}
+
+		/**
+		 * Get the player who sent the message
+		 * @return the name of the player
+		 */
+		public String getPlayer() { return player; }
+
+		/**
+		 * Get what was said
+		 * @return the text
+		 */
+		public String getText() { return text; }
+	}
+
+	/**
+	 * CHANNELS - the open channels
+	 */
+	public static class Channels extends Message {
+
+		private final List<String> channels;
+
+		public Channels(List<String> channels) {
+			super("CHANNELS");
+			this.channels = Collections.unmodifiableList(channels);
+		}
+
+		/**
+		 * Get the names of the open channels
+		 * @return the channels, which cannot be changed
+		 */
+		public List<String> getChannels() { return channels; }
+	}
+
+	/**
+	 * USERS - the users in the current channel
+	 */
+	public static class Users extends Message {
+
+		private final List<String> users;
+
+		public Users(List<String> users) {
+			super("USERS");
+			this.users = Collections.unmodifiableList(users);
+		}
+
+		/**
+		 * Get the nicknames of the users in the channel
+		 * @return the users, which cannot be changed
+		 */
+		public List<String> getUsers() { return users; }
+	}
+
+	/**
+	 * Split a payload into its non-empty parts, without regular expressions
+	 * @param payload the payload
+	 * @param separators the characters to split on
+	 * @return the parts
+	 */
+	static List<String> split(String payload, String separators) {
+		var parts = new ArrayList<String>();
+		int start = 0;
+
+		for (var i = 0; i <= payload.length(); i++) {
+			if (i == payload.length() || separators.indexOf(payload.charAt(i)) >= 0) {
+				if (i > start) parts.add(payload.substring(start, i));
+				start = i + 1;
+			}
+		}
+
+		return parts;
+	}
+}
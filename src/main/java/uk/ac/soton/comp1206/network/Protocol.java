@@ -0,0 +1,101 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Parses frames from the server into typed Messages. Each frame is read once: the command is looked up in a table
+ * and its parser walks the payload with indexOf, without regular expressions or repeated replace/split calls.
+ */
+public class Protocol {
+
+	/**
+	 * The parser for each command with a typed form
+	 */
+	private static final Map<String, Function<String, Message>> PARSERS = new HashMap<>();
+
+	static {
+		PARSERS.put("SCORES", Protocol::parseScores);
+		PARSERS.put("HISCORES", Protocol::parseHiScores);
+		PARSERS.put("PIECE", (payload) -> new Message.Piece(Integer.parseInt(payload.trim())));
+		PARSERS.put("BOARD", Protocol::parseBoard);
+		PARSERS.put("MSG", Protocol::parseChat);
+		PARSERS.put("CHANNELS", (payload) -> new Message.Channels(Message.split(payload, "\n")));
+		PARSERS.put("USERS", (payload) -> new Message.Users(Message.split(payload, "\n:")));
+	}
+
+	/**
+	 * Parse a frame from the server
+	 * @param frame the frame
+	 * @return the message, a Message.Text if the command has no typed form or the payload is malformed
+	 */
+	public static Message parse(String frame) {
+		int space = frame.indexOf(' ');
+		String command = space < 0 ? frame : frame.substring(0, space);
+		String payload = space < 0 ? "" : frame.substring(space + 1);
+
+		var parser = PARSERS.get(command);
+		if (parser == null) return new Message.Text(command, payload);
+
+		try {
+			return parser.apply(payload);
+		} catch (RuntimeException e) {
+			return new Message.Text(command, payload);
+		}
+	}
+
+	/**
+	 * SCORES name:score:lives|DEAD, one player per line
+	 */
+	private static Message parseScores(String payload) {
+		var players = new ArrayList<Message.PlayerScore>();
+
+		for (var line : Message.split(payload, "\n")) {
+			int first = line.indexOf(':');
+			int second = line.indexOf(':', first + 1);
+
+			String lives = second < 0 ? "" : line.substring(second + 1);
+			int end = second < 0 ? line.length() : second;
+
+			players.add(new Message.PlayerScore(line.substring(0, first),
+					Integer.parseInt(line.substring(first + 1, end)),
+					lives.isEmpty() || lives.equals("DEAD") ? -1 : Integer.parseInt(lives)));
+		}
+
+		return new Message.Scores(players);
+	}
+
+	/**
+	 * HISCORES name:score, one entry per line
+	 */
+	private static Message parseHiScores(String payload) {
+		var scores = new ArrayList<Message.Entry>();
+
+		for (var line : Message.split(payload, "\n")) {
+			int colon = line.lastIndexOf(':');
+			scores.add(new Message.Entry(line.substring(0, colon), Integer.parseInt(line.substring(colon + 1))));
+		}
+
+		return new Message.HiScores(scores);
+	}
+
+	/**
+	 * BOARD player:board
+	 */
+	private static Message parseBoard(String payload) {
+		int colon = payload.indexOf(':');
+		if (colon < 0) return new Message.Board("", payload);
+		return new Message.Board(payload.substring(0, colon), payload.substring(colon + 1));
+	}
+
+	/**
+	 * MSG player:text
+	 */
+	private static Message parseChat(String payload) {
+		int colon = payload.indexOf(':');
+		if (colon < 0) return new Message.Chat("", payload);
+		return new Message.Chat(payload.substring(0, colon), payload.substring(colon + 1));
+	}
+}
@@ -0,0 +1,92 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Logs the messages going to and from the server on the "tetrecs.wire" logger, which log4j2.xml sends through an
+ * async appender. It is off until switched on, with -Dtetrecs.wirelog=true or setEnabled, and nothing is built
+ * while it is off. Long messages are cut short and frequent game messages are sampled.
+ */
+public class WireLog {
+
+    private static final Logger logger = LogManager.getLogger("tetrecs.wire");
+
+    /**
+     * The longest message logged in full
+     */
+    public static final int MAX_LENGTH = 120;
+
+    /**
+     * Commands sent many times a second during a game, which are sampled
+     */
+    private static final Set<String> FREQUENT = Set.of("BOARD", "PIECE", "SCORE", "SCORES", "LIVES");
+
+    private static volatile boolean enabled = Boolean.getBoolean("tetrecs.wirelog");
+
+    /**
+     * One in this many frequent messages is logged
+     */
+    private static volatile int sampleRate = 10;
+
+    /**
+     * The number of frequent messages seen while enabled
+     */
+    private static final AtomicLong frequent = new AtomicLong();
+
+    /**
+     * Log a message sent to the server
+     * @param message the message
+     */
+    public static void sent(String message) {
+        if (enabled && logger.isDebugEnabled()) log("> ", message);
+    }
+
+    /**
+     * Log a message received from the server
+     * @param message the message
+     */
+    public static void received(String message) {
+        if (enabled && logger.isDebugEnabled()) log("< ", message);
+    }
+
+    /**
+     * Switch wire logging on or off
+     * @param on whether to log
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+        LogManager.getLogger(WireLog.class).info("Wire logging {}", on ? "on" : "off");
+    }
+
+    /**
+     * Check whether wire logging is on
+     * @return true if on
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Set how many frequent messages make one logged message
+     * @param rate the rate, 1 to log everything
+     */
+    public static void setSampleRate(int rate) {
+        sampleRate = Math.max(1, rate);
+    }
+
+    private static void log(String direction, String message) {
+        int space = message.indexOf(' ');
+        String command = space < 0 ? message : message.substring(0, space);
+        if (FREQUENT.contains(command) && frequent.getAndIncrement() % sampleRate != 0) return;
+
+        if (message.length() <= MAX_LENGTH) {
+            logger.debug("{}{}", direction, message);
+        } else {
+            logger.debug("{}{}... ({} chars)", direction, message.substring(0, MAX_LENGTH), message.length());
+        }
+    }
+}
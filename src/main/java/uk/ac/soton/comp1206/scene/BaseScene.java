@@ -5,6 +5,7 @@ import javafx.scene.control.Button;
 import javafx.scene.paint.Color;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.InputLatency;
 
 /**
  * A Base Scene used in the game. Handles common functionality between all scenes.
@@ -42,6 +43,9 @@ public abstract class BaseScene {
         var previous = gameWindow.getScene();
         Scene scene = new Scene(root, previous.getWidth(), previous.getHeight(), Color.BLACK);
         scene.getStylesheets().add(getClass().getResource("/style/game.css").toExternalForm());
+        
+        //Every frame completes any pending input latency measurements
+        scene.addPostLayoutPulseListener(InputLatency::frameRendered);
         this.scene = scene;
         return scene;
     }
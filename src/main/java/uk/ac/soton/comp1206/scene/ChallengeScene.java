@@ -1,9 +1,5 @@
 package uk.ac.soton.comp1206.scene;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -13,6 +9,7 @@ import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.StackPane;
@@ -27,11 +24,20 @@ import uk.ac.soton.comp1206.component.PieceBoard;
 import uk.ac.soton.comp1206.event.BlockMoveListener;
 import uk.ac.soton.comp1206.event.PieceChangeListener;
 import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.GameCommand;
 import uk.ac.soton.comp1206.game.GamePiece;
 import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.game.ReplayRecorder;
+import uk.ac.soton.comp1206.network.WireLog;
+import uk.ac.soton.comp1206.ui.DebugOverlay;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.HistoryRepository;
+import uk.ac.soton.comp1206.utility.InputLatency;
+import uk.ac.soton.comp1206.utility.Metrics;
 import uk.ac.soton.comp1206.utility.Multimedia;
+import uk.ac.soton.comp1206.utility.ReplayRepository;
+import uk.ac.soton.comp1206.utility.ScoreRepository;
 
 /**
  * The Single Player challenge scene. Holds the UI for the single player challenge mode in the game.
@@ -119,6 +125,11 @@ public class ChallengeScene extends BaseScene {
      * The current highscore
      */
     protected Integer currentHS;
+    
+    /**
+     * The debug statistics, toggled with F3
+     */
+    protected DebugOverlay debugOverlay;
 
     /**
      * Create a new Single Player challenge scene
@@ -158,6 +169,7 @@ public class ChallengeScene extends BaseScene {
 
         //Start new game and initialise animators
         game = new Game(5, 5);
+        game.setRecorder(new ReplayRecorder(ReplayRepository::saveReplay));
         timeline = new Timeline();
         scoreTimeline = new Timeline();
 
@@ -184,6 +196,7 @@ public class ChallengeScene extends BaseScene {
 
 			public void run() {
 				game.cleanUp();
+				HistoryRepository.recordGame(HistoryRepository.getPlayer(), game.getResult());
 				Multimedia.musicPlayer.stop();
 				Multimedia.playAudio("explode.wav");
 				gameWindow.startScores(game);
@@ -205,6 +218,12 @@ public class ChallengeScene extends BaseScene {
         mainPane = new BorderPane();
         bg.getChildren().add(mainPane);
         
+        //Debug statistics on top of everything
+        debugOverlay = new DebugOverlay();
+        debugOverlay.addSection(Metrics::summary);
+        bg.getChildren().add(debugOverlay);
+        StackPane.setAlignment(debugOverlay, Pos.TOP_LEFT);
+        
         //BorderPane to hold the score, title and lives
         var title = new BorderPane();
         mainPane.setTop(title);
@@ -302,8 +321,8 @@ public class ChallengeScene extends BaseScene {
 
         //Handle block on gameboard grid being clicked
         board.setOnBlockClick(this::blockClicked);
-        firstPiece.setOnBlockClick((block) -> { game.currentPiece.rotate(); firstPiece.displayPiece(game.currentPiece); });
-        secondPiece.setOnBlockClick((block) -> { game.nextPiece.rotate(); secondPiece.displayPiece(game.nextPiece); });
+        firstPiece.setOnBlockClick((block) -> game.submitInput(GameCommand.rotate(0), InputLatency.Source.MOUSE));
+        secondPiece.setOnBlockClick((block) -> game.submitInput(GameCommand.rotate(1), InputLatency.Source.MOUSE));
     }
 
     /**
@@ -325,28 +344,13 @@ public class ChallengeScene extends BaseScene {
     }
     
     /**
-     * Get the highscore, update it if we have a higher
+     * Get the highscore, from the scores already in memory. It is 0 until they have loaded.
      * @return highscore
      */
     private Integer getHighscore() {
-		int score = 0;
-
-    	try {
-			File file = new File("localScores.txt");
-    		BufferedReader reader = new BufferedReader(new FileReader(file));
-			String temp;
-			
-			if ((temp = reader.readLine()) != null) {
-				score = Integer.parseInt(temp.split(":")[1]);
-			}
-			
-			reader.close();
-		} catch (Exception e) {
-			logger.info("File not found");
-		}
-	
-    	return score;
+    	return ScoreRepository.getHighScore();
     }
+    
     /**
      * Handle when a block is clicked
      * @param gameBlock the Game Block that was clicked
@@ -361,14 +365,8 @@ public class ChallengeScene extends BaseScene {
     @Override
     public void initialise() {
         logger.info("Initialising Challenge");
-        game.start();
-        Multimedia.playMusic("game_start.wav");
         
-        //Get pieces
-        firstPiece.displayPiece(game.currentPiece);
-        secondPiece.displayPiece(game.nextPiece);
-        
-        //Add listeners to the pieces
+        //Add listeners to the pieces, the game loop sends the first pieces once it has started
         game.addPieceChangeListener(new PieceChangeListener() {
 
 			@Override
@@ -385,6 +383,15 @@ public class ChallengeScene extends BaseScene {
 				
         });
         
+        game.start();
+        Multimedia.playMusic("game_start.wav");
+        
+        //The scores may still be loading, so show the high score again once they have
+        ScoreRepository.whenLoaded((scores) -> {
+        	if (!scores.isEmpty()) currentHS = Math.max(currentHS, scores.get(0).getValue());
+        	highscore.setText(((Integer) Math.max(currentHS, game.getScore().get())).toString());
+        });
+        
         //When we press a key
         scene.setOnKeyPressed((key) -> {
         	if (key.getCode().equals(KeyCode.ESCAPE)) {
@@ -392,7 +399,8 @@ public class ChallengeScene extends BaseScene {
         		Multimedia.musicPlayer.stop();
         		Multimedia.playAudio("rotate.wav");
         		gameWindow.startMenu();
-        	}
+        	} else if (key.getCode().equals(KeyCode.F3)) debugOverlay.toggle();
+        	else if (key.getCode().equals(KeyCode.F4)) WireLog.setEnabled(!WireLog.isEnabled());
         	game.handleInput(key);
         });
     }
@@ -2,13 +2,16 @@ package uk.ac.soton.comp1206.scene;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import javafx.application.Platform;
+import javafx.animation.PauseTransition;
 import javafx.geometry.Insets;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
@@ -21,7 +24,9 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
+import javafx.util.Duration;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Message;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 import uk.ac.soton.comp1206.utility.Multimedia;
@@ -36,15 +41,60 @@ public class LobbyScene extends BaseScene {
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
     
     /**
-     * The timer to ask the communicator for list of lobbies
+     * How often to ask for the list of lobbies while it is changing, in milliseconds
      */
-    private final Timer timer = new Timer();
+    private static final double POLL_FAST = 1000;
+    
+    /**
+     * The slowest polling rate, used when idle or when the server pushes the list itself, in milliseconds
+     */
+    private static final double POLL_SLOW = 30000;
+    
+    /**
+     * Waits until the next time to ask for the list of lobbies
+     */
+    private final PauseTransition poll = new PauseTransition();
+    
+    /**
+     * The current polling interval, doubled each time the list comes back unchanged
+     */
+    private double pollInterval = POLL_FAST;
+    
+    /**
+     * How many CHANNELS must arrive unasked before the server is taken to push the list itself
+     */
+    private static final int PUSHES_NEEDED = 3;
+    
+    /**
+     * The number of LIST requests sent and not answered yet
+     */
+    private int listsInFlight;
+    
+    /**
+     * The number of CHANNELS that arrived with no LIST in flight, since connecting
+     */
+    private int unaskedLists;
+    
+    /**
+     * Whether the server sends CHANNELS without being asked, so polling is only a fallback
+     */
+    private boolean serverPushes;
+    
+    /**
+     * The communicator's reconnect count when the counts above were started
+     */
+    private long reconnects;
     
     /**
      * List of lobbies
      */
     private VBox lobbiesList;
     
+    /**
+     * The channel nodes currently displayed, by name
+     */
+    private final Map<String, Text> channelNodes = new LinkedHashMap<>();
+    
     /**
      * The chat of a lobby
      */
@@ -72,22 +122,15 @@ public class LobbyScene extends BaseScene {
 	
     
     /**
-     * Constructor to initialise the timer
+     * Constructor to set up the communicator
      * @param gameWindow The window that this scene is in
      */
 	public LobbyScene(GameWindow gameWindow) {
 		super(gameWindow);
 		this.communicator = gameWindow.getCommunicator();
+		this.reconnects = communicator.getReconnects();
 		
-		TimerTask task = new TimerTask() {
-
-			@Override
-			public void run() {
-				communicator.send("LIST");
-			}
-			
-		};
-		timer.schedule(task, 0, 5000);
+		poll.setOnFinished((e) -> requestChannels());
 	}
 
 	/**
@@ -96,61 +139,72 @@ public class LobbyScene extends BaseScene {
 	@Override
 	public void initialise() {
 		
-		//Add listener to the communicator
-		communicator.addListener((message) -> {
-			if (!(message.equals("Ping? Pong!"))) {
-				Platform.runLater(new Runnable() {
-
-					@Override
-					public void run() {
-						if (message.startsWith("CHANNELS")) {
-							updateChannels(message.replace("CHANNELS ", ""));
-						} else if (message.startsWith("JOIN")) {
-							joinChannel(message.replace("JOIN ", ""));
-						} else if (message.startsWith("HOST")) {
-							lobbyHostButton.setVisible(true);
-						} else if (message.startsWith("PARTED")) { 
-							lobbyChat.setVisible(false);
-						} else if (message.startsWith("ERROR")) {
-							Alert error = new Alert(Alert.AlertType.ERROR, message.replace("ERROR", ""));
-				            error.showAndWait();
-						} else if (message.startsWith("NICK")) {
-							communicator.send("USERS");
-						} else if (message.startsWith("START")) {
-							Multimedia.musicPlayer.stop();
-							timer.cancel();
-							gameWindow.startMultiplayer();
-						} else if (message.startsWith("USERS")) {
-							showUsers(message.replace("USERS ", ""));
-						} else if (message.startsWith("MSG")) {
-							String text = message.replace(message.split(":")[0] + ":", "");
-							
-							if (text.startsWith("/nick ")) {
-								communicator.send("NICK " + text.replace("/nick ", ""));
-							} else {
-							LocalDateTime date = LocalDateTime.now();
-							messages.getChildren().add(
-									new Text("[" + date.format(formatter) + "] <" 
-											+ message.replace("MSG ", "").split(":")[0] + "> " + text));
-							}
-						}
-					}
-					
-				});
+		//Add listeners to the communicator
+		communicator.subscribeUi(Message.Channels.class, (channels) -> updateChannels(channels.getChannels()));
+		communicator.subscribeUi(Message.Users.class, (users) -> showUsers(users.getUsers()));
+		communicator.subscribeUi(Message.Chat.class, this::receiveChat);
+		communicator.subscribeUi(Message.Text.class, (message) -> {
+			switch (message.getCommand()) {
+				case "JOIN" -> joinChannel(message.getPayload());
+				case "HOST" -> lobbyHostButton.setVisible(true);
+				case "PARTED" -> lobbyChat.setVisible(false);
+				case "ERROR" -> {
+					Alert error = new Alert(Alert.AlertType.ERROR, message.getPayload());
+		            error.showAndWait();
+				}
+				case "NICK" -> communicator.send("USERS");
+				case "START" -> {
+					Multimedia.musicPlayer.stop();
+					poll.stop();
+					gameWindow.startMultiplayer();
+				}
 			}
 		});
 		
 		gameWindow.getScene().setOnKeyPressed((key) -> {
 			if (key.getCode().equals(KeyCode.ESCAPE)) {
 				logger.info("Closing lobby");
+				poll.stop();
 				gameWindow.startMenu();
 			}
 		});
 		
 		//Ask for list of lobbies
+		requestChannels();
+	}
+	
+	/**
+	 * Ask for the list of lobbies and schedule the next request. Stops once this scene is no longer shown.
+	 */
+	private void requestChannels() {
+		if (scene.getWindow() == null) return;
+		
+		checkReconnect();
 		communicator.send("LIST");
+		listsInFlight++;
+		
+		//An unfocused window polls as if idle
+		boolean focused = scene.getWindow().isFocused();
+		poll.setDuration(Duration.millis(serverPushes || !focused ? POLL_SLOW : pollInterval));
+		poll.playFromStart();
 	}
 
+	/**
+	 * Start counting afresh after a reconnect. The communicator asks for the list again itself, so the answer to that
+	 * is not a push, and the new connection may be to a server that does not push.
+	 * @return whether there has been a reconnect since the last check
+	 */
+	private boolean checkReconnect() {
+		long current = communicator.getReconnects();
+		if (current == reconnects) return false;
+		
+		reconnects = current;
+		listsInFlight = 0;
+		unaskedLists = 0;
+		serverPushes = false;
+		return true;
+	}
+	
 	/**
 	 * Build the layout of the scene
 	 */
@@ -255,20 +309,43 @@ public class LobbyScene extends BaseScene {
 	}
 
 	/**
-	 * Update the list of channels
-	 * @param lobbies The lobbies that exist
+	 * Update the list of channels, only touching the nodes of channels that appeared or went away
+	 * @param lobbyList The lobbies that exist
 	 */
-	private void updateChannels(String lobbies) {
-		logger.info("Updating channels");
+	private void updateChannels(List<String> lobbyList) {
+		//The first list after a reconnect was asked for by the communicator. A late answer to an earlier poll still
+		//counts as asked for, so only lists with none in flight count towards the server pushing them.
+		if (!checkReconnect()) {
+			if (listsInFlight > 0) {
+				listsInFlight--;
+			} else if (++unaskedLists >= PUSHES_NEEDED && !serverPushes) {
+				logger.info("Server pushes the list of channels, polling slowly");
+				serverPushes = true;
+			}
+		}
 		
-		//Split to get each lobby, remove the previous list to render it again
-		String[] lobbyList = lobbies.split("\\n");
-		lobbiesList.getChildren().remove(0, lobbiesList.getChildren().size());
+		var current = new HashSet<String>(lobbyList);
+		boolean changed = false;
 		
-		//Add each lobby and handle join requests and styling
+		//Remove lobbies that have gone
+		Iterator<Map.Entry<String, Text>> displayed = channelNodes.entrySet().iterator();
+		while (displayed.hasNext()) {
+			var entry = displayed.next();
+			if (!current.contains(entry.getKey())) {
+				lobbiesList.getChildren().remove(entry.getValue());
+				displayed.remove();
+				changed = true;
+			}
+		}
+		
+		//Add new lobbies and handle join requests and styling
 		for (var lobby : lobbyList) {
+			if (channelNodes.containsKey(lobby)) continue;
+			
 			var channel = new Text(lobby);
 			lobbiesList.getChildren().add(channel);
+			channelNodes.put(lobby, channel);
+			changed = true;
 			
 			channel.getStyleClass().add("channelItem");
 			channel.setOnMouseClicked((e) -> { communicator.send("JOIN " + lobby); Multimedia.playAudio("rotate.wav"); });
@@ -277,6 +354,10 @@ public class LobbyScene extends BaseScene {
 			
 			VBox.setMargin(channel, new Insets(10, 0, 10, 0));
 		}
+		
+		//Poll quickly while the list is changing, back off while it is not
+		pollInterval = changed ? POLL_FAST : Math.min(pollInterval * 2, POLL_SLOW);
+		if (changed) logger.info("Updated channels");
 	}
 	
 	
@@ -304,13 +385,28 @@ public class LobbyScene extends BaseScene {
 		Multimedia.playAudio("lifegain.wav");
 	}
 	
+	/**
+	 * Show a chat message, or change our nickname if it is a /nick command
+	 * @param chat The message
+	 */
+	private void receiveChat(Message.Chat chat) {
+		String text = chat.getText();
+		
+		if (text.startsWith("/nick ")) {
+			communicator.send("NICK " + text.replace("/nick ", ""));
+		} else {
+			LocalDateTime date = LocalDateTime.now();
+			messages.getChildren().add(
+					new Text("[" + date.format(formatter) + "] <" + chat.getPlayer() + "> " + text));
+		}
+	}
+	
 	/**
 	 * Show users in a channel
 	 * @param users The users to show
 	 */
-	private void showUsers(String users) {
+	private void showUsers(List<String> lobbyUsers) {
 		playersList.getChildren().clear();
-		String[] lobbyUsers = users.split(":");
 		
 		for (var user : lobbyUsers) {
 			var nextUser = new Text(user);
@@ -17,9 +17,11 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
 import javafx.util.Duration;
+import uk.ac.soton.comp1206.App;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 import uk.ac.soton.comp1206.utility.Multimedia;
+import uk.ac.soton.comp1206.utility.ReplayRepository;
 
 /**
  * The main menu of the game. Provides a gateway to the rest of the game.
@@ -73,18 +75,21 @@ public class MenuScene extends BaseScene {
         var singlePlayerButton = new Text("Single Player");
         var multiPlayerButton = new Text("Multiplayer");
         var guideButton = new Text("How To Play");
+        var replayButton = new Text("Last Replay");
         var quitButton = new Text("Quit");
         
         singlePlayerButton.getStyleClass().add("title");
         multiPlayerButton.getStyleClass().add("title");
         guideButton.getStyleClass().add("title");
+        replayButton.getStyleClass().add("title");
         quitButton.getStyleClass().add("title");
-        buttonPane.getChildren().addAll(singlePlayerButton, multiPlayerButton, guideButton, quitButton);
+        buttonPane.getChildren().addAll(singlePlayerButton, multiPlayerButton, guideButton, replayButton, quitButton);
         
         BorderPane.setMargin(buttonPane, new Insets(80, 0, gameWindow.getHeight()/8, gameWindow.getWidth()/3));
         BorderPane.setMargin(imageView, new Insets(gameWindow.getHeight()/6, 
         		0, gameWindow.getHeight()/10, gameWindow.getWidth()/8));
         VBox.setMargin(multiPlayerButton, new Insets(0, 0, 0, 20));
+        VBox.setMargin(replayButton, new Insets(0, 0, 0, 40));
         VBox.setMargin(quitButton, new Insets(0, 0, 0, 80));
         
         singlePlayerButton.setOnMouseClicked((e) -> { this.startGame(e); Multimedia.playAudio("rotate.wav"); });
@@ -99,7 +104,11 @@ public class MenuScene extends BaseScene {
         guideButton.setOnMouseEntered((e) -> { guideButton.setFill(Color.YELLOW); });
         guideButton.setOnMouseExited((e) -> { guideButton.setFill(Color.WHITE); });
         
-        quitButton.setOnMouseClicked((e) -> { System.exit(0); Multimedia.playAudio("rotate.wav"); });
+        replayButton.setOnMouseClicked((e) -> { this.openReplay(e); Multimedia.playAudio("rotate.wav"); });
+        replayButton.setOnMouseEntered((e) -> { replayButton.setFill(Color.YELLOW); });
+        replayButton.setOnMouseExited((e) -> { replayButton.setFill(Color.WHITE); });
+        
+        quitButton.setOnMouseClicked((e) -> { App.getInstance().shutdown(); });
         quitButton.setOnMouseEntered((e) -> { quitButton.setFill(Color.YELLOW); });
         quitButton.setOnMouseExited((e) -> { quitButton.setFill(Color.WHITE); });
         
@@ -141,4 +150,12 @@ public class MenuScene extends BaseScene {
     private void openGuide(MouseEvent event) {
     	gameWindow.startGuide();
     }
+    
+    /**
+     * Play back the last recorded game, once it has been read
+     * @param event event
+     */
+    private void openReplay(MouseEvent event) {
+    	ReplayRepository.loadLatestReplay(gameWindow::startReplay);
+    }
 }
@@ -13,6 +13,7 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
+import uk.ac.soton.comp1206.component.OpponentBoards;
 import uk.ac.soton.comp1206.event.BlockMoveListener;
 import uk.ac.soton.comp1206.event.GameTimerListener;
 import uk.ac.soton.comp1206.event.MessageListener;
@@ -20,9 +21,14 @@ import uk.ac.soton.comp1206.event.PieceChangeListener;
 import uk.ac.soton.comp1206.event.PlayersScoreListener;
 import uk.ac.soton.comp1206.game.GamePiece;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
+import uk.ac.soton.comp1206.game.ReplayRecorder;
+import uk.ac.soton.comp1206.network.Message;
+import uk.ac.soton.comp1206.network.WireLog;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.HistoryRepository;
 import uk.ac.soton.comp1206.utility.Multimedia;
+import uk.ac.soton.comp1206.utility.ReplayRepository;
 
 /**
  * Set the scene for the multiplayer game
@@ -52,6 +58,11 @@ public class MultiplayerScene extends ChallengeScene {
      */
     private TextField textField;
     
+    /**
+     * The other players' boards
+     */
+    private OpponentBoards opponents;
+    
     /**
      * Basic constructor to initialise the current window
      * @param gameWindow
@@ -67,8 +78,6 @@ public class MultiplayerScene extends ChallengeScene {
 	@Override
     public void initialise() {
         logger.info("Initialising Challenge");
-        game.start();
-        Multimedia.playMusic("game_start.wav");
         
         game.addPieceChangeListener(new PieceChangeListener() {
 
@@ -86,8 +95,13 @@ public class MultiplayerScene extends ChallengeScene {
 				
         });
         
+        game.start();
+        Multimedia.playMusic("game_start.wav");
+        
         scene.setOnKeyPressed((key) ->  {
         	if (key.getCode().equals(KeyCode.Y)) textField.setVisible(true);
+        	else if (key.getCode().equals(KeyCode.F3)) debugOverlay.toggle();
+        	else if (key.getCode().equals(KeyCode.F4)) WireLog.setEnabled(!WireLog.isEnabled());
         	game.handleInput(key);
         });
         
@@ -102,6 +116,7 @@ public class MultiplayerScene extends ChallengeScene {
 
         //Start new game and initialise animators
         game = new MultiplayerGame(5, 5, gameWindow.getCommunicator());
+        game.setRecorder(new ReplayRecorder(ReplayRepository::saveReplay));
         timeline = new Timeline();
         scoreTimeline = new Timeline();
         
@@ -138,6 +153,7 @@ public class MultiplayerScene extends ChallengeScene {
 
 			public void run() {
 				game.cleanUp();
+				HistoryRepository.recordGame(player(), game.getResult());
 				Multimedia.musicPlayer.stop();
 				Multimedia.playAudio("explode.wav");
 				gameWindow.startLeaderboard(game);
@@ -150,18 +166,21 @@ public class MultiplayerScene extends ChallengeScene {
         game.addScoreListener(new PlayersScoreListener() {
 
 			@Override
-			public void playerScore(String score) {
+			public void playerScore(Message.Scores scores) {
 				players.getChildren().clear();
 				double offset = 1;
 				
-				for (var player : score.split("\n")) {
+				for (var player : scores.getPlayers()) {
 					offset += 2;
 					
-					var nextPlayer = new Text(player.split(":")[0] + ": " + player.split(":")[1]);
+					var nextPlayer = new Text(player.getName() + ": " + player.getScore());
 					nextPlayer.getStyleClass().add("scorelist");
 					nextPlayer.setFill(new Color(1 - 1/offset, offset/(offset+6), 0.5, 1));
 					
-					if (player.split(":")[2].equals("DEAD")) nextPlayer.setStrikethrough(true);
+					if (player.isDead()) {
+						nextPlayer.setStrikethrough(true);
+						opponents.setDead(player.getName());
+					}
 					
 					players.getChildren().add(nextPlayer);
 					
@@ -171,12 +190,15 @@ public class MultiplayerScene extends ChallengeScene {
         	
         });
         
+        //Show the other players' boards as they change
+        opponents = new OpponentBoards(gameWindow.getWidth()/4 - 10, gameWindow.getHeight()/2, 5, 5, 10);
+        game.addBoardListener(opponents::update);
+        
         game.addMessageListener(new MessageListener() {
 
 			@Override
-			public void receiveMessage(String message) {
-				playerText.setText("<" + message.split(":")[0] + "> " 
-						+ message.replace(message.split(":")[0] + ":", ""));
+			public void receiveMessage(Message.Chat message) {
+				playerText.setText("<" + message.getPlayer() + "> " + message.getText());
 			}
         	
         });
@@ -216,7 +238,10 @@ public class MultiplayerScene extends ChallengeScene {
         boardAndText.getChildren().addAll(board, playerText, textField);
         mainPane.setCenter(boardAndText);
         
-        BorderPane.setMargin(boardAndText, new Insets(0, 30, 0, gameWindow.getWidth()/4));
+        BorderPane.setMargin(boardAndText, new Insets(0, 30, 0, 0));
+        
+        mainPane.setLeft(opponents);
+        BorderPane.setMargin(opponents, new Insets(0, 0, 0, 10));
         
         textField.setVisible(false);
         textField.setOnKeyPressed((key) -> {
@@ -231,4 +256,13 @@ public class MultiplayerScene extends ChallengeScene {
         essentials.getChildren().addAll(players, levelText, level, incomingText, firstPiece, secondPiece);
         
     }
+    
+    /**
+     * Get the name to record this game under, our nickname if the server has confirmed one
+     * @return the name
+     */
+    private String player() {
+    	var name = gameWindow.getCommunicator().getName();
+    	return name != null ? name : HistoryRepository.getPlayer();
+    }
 }
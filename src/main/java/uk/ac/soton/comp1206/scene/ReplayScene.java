@@ -0,0 +1,181 @@
+package uk.ac.soton.comp1206.scene;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javafx.animation.PauseTransition;
+import javafx.geometry.Insets;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.util.Duration;
+import uk.ac.soton.comp1206.component.GameBoard;
+import uk.ac.soton.comp1206.game.Replay;
+import uk.ac.soton.comp1206.game.ReplayPlayer;
+import uk.ac.soton.comp1206.ui.GamePane;
+import uk.ac.soton.comp1206.ui.GameWindow;
+
+/**
+ * This scene plays back a recorded game on a GameBoard. The moves are applied on the UI thread with the gaps they were
+ * recorded with, divided by the chosen speed.
+ */
+public class ReplayScene extends BaseScene {
+
+    private static final Logger logger = LogManager.getLogger(ReplayScene.class);
+
+    /**
+     * The speeds chosen with the keys 1 to 4
+     */
+    private static final double[] SPEEDS = {1, 2, 4, 16};
+
+    /**
+     * The shortest gap between two moves, in milliseconds, so fast playback can still be followed
+     */
+    private static final double MIN_STEP = 30;
+
+    /**
+     * Plays the replay on its own game
+     */
+    private final ReplayPlayer player;
+
+    /**
+     * Waits for the next move
+     */
+    private final PauseTransition stepper = new PauseTransition();
+
+    /**
+     * The current speed
+     */
+    private double speed = SPEEDS[0];
+
+    private boolean paused;
+
+    /**
+     * Shows the speed and score
+     */
+    private Text status;
+
+    /**
+     * Constructor
+     * @param gameWindow The window that this scene is in
+     * @param replay The replay to play
+     */
+	public ReplayScene(GameWindow gameWindow, Replay replay) {
+		super(gameWindow);
+
+		//UI updates are published on the UI thread, where the replay is stepped
+		player = new ReplayPlayer(replay, Runnable::run);
+		stepper.setOnFinished((e) -> step());
+	}
+
+	/**
+	 * Start playing, and handle the keys for speed, pause and leaving
+	 */
+	@Override
+	public void initialise() {
+		gameWindow.getScene().setOnKeyPressed((key) -> {
+			switch (key.getCode()) {
+				case ESCAPE -> {
+					stepper.stop();
+					player.getGame().cleanUp();
+					gameWindow.startMenu();
+				}
+				case DIGIT1 -> setSpeed(0);
+				case DIGIT2 -> setSpeed(1);
+				case DIGIT3 -> setSpeed(2);
+				case DIGIT4 -> setSpeed(3);
+				case SPACE -> {
+					paused = !paused;
+					if (paused) stepper.stop();
+					else scheduleNext();
+					updateStatus();
+				}
+				default -> { }
+			}
+		});
+
+		player.start();
+		updateStatus();
+		scheduleNext();
+	}
+
+	/**
+	 * Build the scene's layout
+	 */
+	@Override
+	public void build() {
+		logger.info("Building " + this.getClass().getName());
+
+        root = new GamePane(gameWindow.getWidth(),gameWindow.getHeight());
+
+        var replayPane = new StackPane();
+        replayPane.setMaxWidth(gameWindow.getWidth());
+        replayPane.setMaxHeight(gameWindow.getHeight());
+        replayPane.getStyleClass().add("challenge-background");
+        root.getChildren().add(replayPane);
+
+        var mainPane = new BorderPane();
+        replayPane.getChildren().add(mainPane);
+
+        //Title and status on top
+        var top = new VBox();
+        var title = new Text("Replay");
+        title.getStyleClass().add("title");
+        status = new Text();
+        status.getStyleClass().add("heading");
+        top.getChildren().addAll(title, status);
+        mainPane.setTop(top);
+        BorderPane.setMargin(top, new Insets(10, 0, 0, 20));
+
+        //The board shows the replayed game's grid
+        var board = new GameBoard(player.getGame().getGrid(), gameWindow.getWidth()/2, gameWindow.getWidth()/2);
+        mainPane.setCenter(board);
+
+        var help = new Text("1-4: speed   Space: pause   Esc: menu");
+        help.getStyleClass().add("heading");
+        mainPane.setBottom(help);
+        BorderPane.setMargin(help, new Insets(0, 0, 10, 20));
+
+        //Keep the score in the status
+        player.getGame().getScore().addListener((observable, oldValue, newValue) -> updateStatus());
+	}
+
+	/**
+	 * Play the next move and wait for the one after it
+	 */
+	private void step() {
+		if (paused) return;
+
+		player.step();
+		scheduleNext();
+	}
+
+	/**
+	 * Wait for as long as the next move took, at the current speed
+	 */
+	private void scheduleNext() {
+		if (paused) return;
+
+		if (!player.hasNext()) {
+			status.setText("Finished - score " + player.getGame().getScore().get());
+			return;
+		}
+
+		stepper.setDuration(Duration.millis(Math.max(MIN_STEP, player.getNextDelay() / speed)));
+		stepper.playFromStart();
+	}
+
+	/**
+	 * Change the speed, from the next move on
+	 * @param index the index into SPEEDS
+	 */
+	private void setSpeed(int index) {
+		speed = SPEEDS[index];
+		updateStatus();
+	}
+
+	private void updateStatus() {
+		status.setText((paused ? "Paused" : "x" + (int) speed) + " - score " + player.getGame().getScore().get());
+	}
+}
@@ -1,18 +1,12 @@
 package uk.ac.soton.comp1206.scene;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import javafx.application.Platform;
 import javafx.beans.property.SimpleListProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
@@ -23,14 +17,18 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
-import javafx.util.Pair;
+import javafx.scene.text.Text;
 import uk.ac.soton.comp1206.game.Game;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Message;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 import uk.ac.soton.comp1206.ui.ScoresUI;
+import uk.ac.soton.comp1206.utility.HistoryRepository;
+import uk.ac.soton.comp1206.utility.Leaderboard;
 import uk.ac.soton.comp1206.utility.Multimedia;
+import uk.ac.soton.comp1206.utility.ScoreRepository;
 
 /**
  * This scene holds the scores at the end of a singe player or a multiplayer game.
@@ -42,6 +40,11 @@ public class ScoresScene extends BaseScene {
 	 */
     private static final Logger logger = LogManager.getLogger(ScoresScene.class);
 
+    /**
+     * The number of scores shown in each list
+     */
+    private static final int SHOWN = 10;
+
     /**
      * The multiplayer game
      */
@@ -78,19 +81,34 @@ public class ScoresScene extends BaseScene {
 	private BorderPane borderPane;
 	
 	/**
-	 * The list of pairs name:score for local scores
+	 * The local scores shown, best first
+	 */
+	SimpleListProperty<Leaderboard.Entry> localScores;
+	
+	/**
+	 * The online scores shown, best first
+	 */
+	SimpleListProperty<Leaderboard.Entry> onlineScores;
+	
+	/**
+	 * The best local scores, which localScores shows
+	 */
+	private final Leaderboard localBoard = new Leaderboard(SHOWN);
+	
+	/**
+	 * The best online scores, which onlineScores shows
 	 */
-	SimpleListProperty<Pair> localScores;
+	private final Leaderboard onlineBoard = new Leaderboard(SHOWN);
 	
 	/**
-	 * The list of pairs name:score for online scores
+	 * The players of a multiplayer game
 	 */
-	SimpleListProperty<Pair> onlineScores;
+	SimpleListProperty<Message.PlayerScore> boardScores;
 	
 	/**
-	 * The list of strings name:score:<lives|DEAD> for multiplayer games
+	 * The player's games and all games of this mode, from the game history
 	 */
-	SimpleListProperty<String> boardScores;
+	private final Text stats = new Text();
 	
 	/**
 	 * Value that indicates whether we have been prompted to add a new highscore
@@ -110,29 +128,29 @@ public class ScoresScene extends BaseScene {
 		Multimedia.playMusic("end.wav");
 		
 		//Initialise scores
-		localScores = new SimpleListProperty<Pair>(FXCollections.observableArrayList(
-				new ArrayList<Pair<String, Integer>>()));
-		onlineScores = new SimpleListProperty<Pair>(FXCollections.observableArrayList(
-				new ArrayList<Pair<String, Integer>>()));
+		localScores = new SimpleListProperty<Leaderboard.Entry>(FXCollections.observableArrayList(
+				new ArrayList<Leaderboard.Entry>()));
+		onlineScores = new SimpleListProperty<Leaderboard.Entry>(FXCollections.observableArrayList(
+				new ArrayList<Leaderboard.Entry>()));
 		
 		//Initialise the corresponding UI elements
         localScoresUI = new ScoresUI(localScores, "Your Scores");
         onlineScoresUI = new ScoresUI(onlineScores, "Online Scores");
 		
         //Update UI on each score change
-		localScores.addListener(new ListChangeListener<Pair>() {
+		localScores.addListener(new ListChangeListener<Leaderboard.Entry>() {
 
 			@Override
-			public void onChanged(Change<? extends Pair> c) {
+			public void onChanged(Change<? extends Leaderboard.Entry> c) {
 				localScoresUI.loadScores();
 			}
 			
 		});
 		
-		onlineScores.addListener(new ListChangeListener<Pair>() {
+		onlineScores.addListener(new ListChangeListener<Leaderboard.Entry>() {
 
 			@Override
-			public void onChanged(Change<? extends Pair> c) {
+			public void onChanged(Change<? extends Leaderboard.Entry> c) {
 				onlineScoresUI.loadScores();
 			}
 			
@@ -152,29 +170,29 @@ public class ScoresScene extends BaseScene {
 		Multimedia.playMusic("end.wav");
 		
 		//Initialise leaderboard and online scores
-		boardScores = new SimpleListProperty<String>(FXCollections.observableArrayList(
-				new ArrayList<String>()));
-		onlineScores = new SimpleListProperty<Pair>(FXCollections.observableArrayList(
-				new ArrayList<Pair<String, Integer>>()));
+		boardScores = new SimpleListProperty<Message.PlayerScore>(FXCollections.observableArrayList(
+				new ArrayList<Message.PlayerScore>()));
+		onlineScores = new SimpleListProperty<Leaderboard.Entry>(FXCollections.observableArrayList(
+				new ArrayList<Leaderboard.Entry>()));
 		
 		//Initialise the corresponding UI elements
         localScoresUI = new ScoresUI(boardScores, "Leaderboard");
         onlineScoresUI = new ScoresUI(onlineScores, "Online Scores");
 		
         //Update UI on score change
-		boardScores.addListener(new ListChangeListener<String>() {
+		boardScores.addListener(new ListChangeListener<Message.PlayerScore>() {
 
 			@Override
-			public void onChanged(Change<? extends String> c) {
+			public void onChanged(Change<? extends Message.PlayerScore> c) {
 				localScoresUI.loadLeaderboard();
 			}
 			
 		});
 		
-		onlineScores.addListener(new ListChangeListener<Pair>() {
+		onlineScores.addListener(new ListChangeListener<Leaderboard.Entry>() {
 
 			@Override
-			public void onChanged(Change<? extends Pair> c) {
+			public void onChanged(Change<? extends Leaderboard.Entry> c) {
 				onlineScoresUI.loadScores();
 			}
 			
@@ -188,30 +206,20 @@ public class ScoresScene extends BaseScene {
 	@Override
 	public void initialise() {
 
-		//Add listener
-		communicator.addListener((message) -> {
-			Platform.runLater(new Runnable() {
-
-				@Override
-				public void run() {
-					if (message.startsWith("HISCORES")) {
-						loadOnlineScores(message);
-					} else if (message.startsWith("SCORES ")) {
-						loadMultiplayerScores(message);
-					}
-				}
-			});
-		});
+		//Add listeners
+		communicator.subscribeUi(Message.Scores.class, this::loadMultiplayerScores);
 		 
 		//Go back to main menu when pressing ESC
 		gameWindow.getScene().setOnKeyPressed((key) -> {
 			if (key.getCode().equals(KeyCode.ESCAPE)) { gameWindow.startMenu(); }
 		});
 		
-		//Send HISCORES for both single and multiplayer, send SCORES only on multiplayer
-		communicator.send("HISCORES");
-		if (game instanceof MultiplayerGame) communicator.send("SCORES");
+		//Show the cached online scores for both single and multiplayer, send SCORES only on multiplayer
+		gameWindow.getHiScores().show(this::loadOnlineScores);
+		if (mpGame != null) communicator.send("SCORES");
 		else loadLocalScores();
+		
+		loadStats();
 	}
 
 	/**
@@ -244,60 +252,59 @@ public class ScoresScene extends BaseScene {
         
         BorderPane.setMargin(localScoresUI, new Insets(10, 0, 0, 100));
         BorderPane.setMargin(onlineScoresUI, new Insets(10, 100, 0, 0));
+        
+        //Stats from the game history along the bottom
+        stats.getStyleClass().add("heading");
+        borderPane.setBottom(stats);
+        BorderPane.setMargin(stats, new Insets(0, 0, 20, 100));
 	}
 	
 	/**
-	 * Load scores on the local machine
+	 * Load scores on the local machine. They come from memory once the repository has loaded them.
 	 */
 	private void loadLocalScores() {
-		File file = new File("localScores.txt");
-		
-		//If file doesn't exist, get default high scores
-		if (!file.isFile()) writeDefaultScores();
-		
-		//Read from file and add the scores to the scores list
-		try {
-			BufferedReader reader = new BufferedReader(new FileReader(file));
-			String temp;
-			
-			while ((temp = reader.readLine()) != null) {
-				String name = temp.split(":")[0];
-				Integer score = Integer.parseInt(temp.split(":")[1]);
-				localScores.add(new Pair<String, Integer>(name, score));
-			}
+		ScoreRepository.whenLoaded((scores) -> {
+			for (var score : scores) localBoard.add(score.getKey(), score.getValue());
+			localScores.setAll(localBoard.entries());
 			
-			reader.close();
-		} catch (Exception e) {
-			logger.info("File not found");
+			//Check whether we need to add a new score
+			addScore();
+		});
+	}
+	
+	/**
+	 * Show how the player's games and every game of this mode have gone. The game that just finished was recorded
+	 * before this scene was made, and the history handles requests in order, so it is included.
+	 */
+	private void loadStats() {
+		String player;
+		String mode;
+		if (mpGame != null) {
+			player = communicator.getName() != null ? communicator.getName() : HistoryRepository.getPlayer();
+			mode = mpGame.getMode();
+		} else {
+			player = HistoryRepository.getPlayer();
+			mode = game.getMode();
 		}
 		
-		//Sort the array highest - lowest and check whether we need to add a new score
-		localScores.sort(new SortArray());
-		addScore();
+		HistoryRepository.getPlayerStats(player, (playerStats) ->
+			HistoryRepository.getModeStats(mode, (modeStats) ->
+				stats.setText(player + ": " + playerStats + "\nAll " + mode + ": " + modeStats)));
 	}
 	
 	/**
-	 * Load scores from the communicator
-	 * @param scores The scores that we receive from the communicator
+	 * Load the online scores, from the cache or the server
+	 * @param scores The scores, best first
 	 */
-	private void loadOnlineScores(String scores) {
-		//HISCORES <Name>:<Score>\n...
+	private void loadOnlineScores(List<Message.Entry> scores) {
 		logger.info("Reading online scores");
 		
-		//Remove the protocol from the string and split it
-		scores = scores.replaceAll("HISCORES ", "");
-		String[] scoresList = scores.split("\\n");
+		//Keep the best scores, replacing any list we had before
+		onlineBoard.clear();
+		for (var score : scores) onlineBoard.add(score.getName(), score.getScore());
 		
-		//Add each score to the list
-		for (var score : scoresList) {
-			String name = score.split(":")[0];
-			Integer value = Integer.parseInt(score.split(":")[1]);
-
-			onlineScores.add(new Pair<String, Integer>(name, value));
-		}
-		
-		//Sort the list and check whether we need to add a new score
-		onlineScores.sort(new SortArray());
+		//Show them and check whether we need to add a new score
+		onlineScores.setAll(onlineBoard.entries());
 		addScore();
 	}
 	
@@ -305,62 +312,16 @@ public class ScoresScene extends BaseScene {
 	 * Load scores from the multiplayer game
 	 * @param scores The scores from the multiplayer game
 	 */
-	private void loadMultiplayerScores(String scores) {
-		//SCORES <Name>:<Score>:<Lives|DEAD>\n...
+	private void loadMultiplayerScores(Message.Scores scores) {
 		logger.info("Reading leaderboard");
 				
-		//Remove protocol and split
-		scores = scores.replaceAll("SCORES ", "");
-		String[] scoresList = scores.split("\\n");
-				
 		//Add each score to the list
-		for (var score : scoresList) {
-			boardScores.add(score);
-		}
+		boardScores.addAll(scores.getPlayers());
 		
 		//Sort the list
 		boardScores.sort(new SortLeaderboard());
 	}
 	
-	/**
-	 * Write scores on the local machine
-	 */
-	private void writeLocalScores() {
-		File file = new File("localScores.txt");
-				
-		//Write the scores from the score list to the file, removing the previous data
-		try {
-			Writer out = new FileWriter(file, false);
-					
-			for (int i = 0; i < localScores.size() && i < 10; i++) {
-				out.write(localScores.get(i).getKey() + ":" + localScores.get(i).getValue() + "\n");
-			}
-					
-			out.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
-	
-	/**
-	 * Write default scores to the local machine
-	 */
-	private void writeDefaultScores() {
-		File file = new File("localScores.txt");
-		
-		try {
-			Writer out = new FileWriter(file, true);
-			
-			for (int i = 1000; i <= 10000; i+=1000) {
-				out.write("test:" + i + "\n");
-			}
-			
-			out.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
-	
 	/**
 	 * Show textfield and a button to add a new highscore
 	 */
@@ -376,10 +337,8 @@ public class ScoresScene extends BaseScene {
 		}
 		
 		//Check if the index is valid and the score is higher than the lowest recorded
-		if (!scoreAdded && ((localScores.size()-1 >= 0 && 
-				game.getScore().get() > (int) localScores.get(localScores.size()-1).getValue()) || 
-				(onlineScores.size()-1 >= 0 && 
-				game.getScore().get() > (int) onlineScores.get(onlineScores.size()-1).getValue())))
+		if (!scoreAdded && ((localBoard.size() > 0 && game.getScore().get() > localBoard.getLowest()) || 
+				(onlineBoard.size() > 0 && game.getScore().get() > onlineBoard.getLowest())))
 		{
 			//We have been prompted now
 			scoreAdded = true;
@@ -399,17 +358,13 @@ public class ScoresScene extends BaseScene {
 			button.setOnAction((e) -> {
 
 				
-				Pair input = new Pair<String, Integer>(textfield.getText(), game.getScore().get());
-				localScores.add(input);
-				onlineScores.add(input);
+				//Put the new score on the local board
+				localBoard.add(textfield.getText(), game.getScore().get());
+				localScores.setAll(localBoard.entries());
 					
-				//Sort the arrays once we've entered the new score
-				localScores.sort(new SortArray());
-				onlineScores.sort(new SortArray());
-					
-				//Write scores on the local machine and send a new highscore to the server
-				writeLocalScores();
-				communicator.send("HISCORE " + textfield.getText() + ":" + game.getScore().get());
+				//Write scores on the local machine and send a new highscore to the server, which shows it at once
+				ScoreRepository.submit(textfield.getText(), game.getScore().get());
+				gameWindow.getHiScores().submit(textfield.getText(), game.getScore().get());
 					
 				//Set the score submission layout invisible
 				inputPane.setVisible(false);
@@ -432,26 +387,14 @@ public class ScoresScene extends BaseScene {
 		
 	}
 		
-	/**
-	 * Sort local scores and online scores
-	 */
-	class SortArray implements Comparator<Pair> {
-
-		@Override
-		public int compare(Pair o1, Pair o2) {
-			return (int) o2.getValue() - (int) o1.getValue();
-		}
-		
-	}
-	
 	/**
 	 * Sort leaderboard scores
 	 */
-	class SortLeaderboard implements Comparator<String> {
+	class SortLeaderboard implements Comparator<Message.PlayerScore> {
 
 		@Override
-		public int compare(String o1, String o2) {
-			return Integer.parseInt(o2.split(":")[1]) - Integer.parseInt(o1.split(":")[1]);
+		public int compare(Message.PlayerScore o1, Message.PlayerScore o2) {
+			return Integer.compare(o2.getScore(), o1.getScore());
 		}
 		
 	}
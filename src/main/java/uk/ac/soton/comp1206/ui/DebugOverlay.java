@@ -0,0 +1,68 @@
+package uk.ac.soton.comp1206.ui;
+
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.text.Text;
+import javafx.util.Duration;
+
+/**
+ * A text overlay showing debug statistics, refreshed twice a second while it is visible
+ */
+public class DebugOverlay extends Text {
+
+	/**
+	 * The sections of text to show
+	 */
+	private final ArrayList<Supplier<String>> sections = new ArrayList<Supplier<String>>();
+
+	/**
+	 * The timeline refreshing the text
+	 */
+	private final Timeline refresh;
+
+	/**
+	 * Create a hidden overlay
+	 */
+	public DebugOverlay() {
+		getStyleClass().add("debug");
+		setVisible(false);
+		setMouseTransparent(true);
+
+		refresh = new Timeline(new KeyFrame(Duration.millis(500), (e) -> update()));
+		refresh.setCycleCount(Timeline.INDEFINITE);
+	}
+
+	/**
+	 * Add a section of text to the overlay
+	 * @param section supplies the text of the section
+	 */
+	public void addSection(Supplier<String> section) {
+		sections.add(section);
+	}
+
+	/**
+	 * Show or hide the overlay
+	 */
+	public void toggle() {
+		setVisible(!isVisible());
+
+		if (isVisible()) {
+			update();
+			refresh.play();
+		} else refresh.stop();
+	}
+
+	/**
+	 * Refresh the text from every section
+	 */
+	private void update() {
+		var text = new StringBuilder();
+		for (var section : sections) {
+			text.append(section.get()).append("\n");
+		}
+		setText(text.toString());
+	}
+}
@@ -3,6 +3,8 @@ package uk.ac.soton.comp1206.ui;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+
 import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.layout.Pane;
@@ -12,14 +14,19 @@ import javafx.stage.Stage;
 import uk.ac.soton.comp1206.App;
 import uk.ac.soton.comp1206.game.Game;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
+import uk.ac.soton.comp1206.game.Replay;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.HiScoreCache;
+import uk.ac.soton.comp1206.network.LocalServer;
 import uk.ac.soton.comp1206.scene.BaseScene;
 import uk.ac.soton.comp1206.scene.ChallengeScene;
 import uk.ac.soton.comp1206.scene.InstructionScene;
 import uk.ac.soton.comp1206.scene.LobbyScene;
 import uk.ac.soton.comp1206.scene.MenuScene;
 import uk.ac.soton.comp1206.scene.MultiplayerScene;
+import uk.ac.soton.comp1206.scene.ReplayScene;
 import uk.ac.soton.comp1206.scene.ScoresScene;
+import uk.ac.soton.comp1206.utility.Metrics;
 
 /**
  * The GameWindow is the single window for the game where everything takes place. To move between screens in the game,
@@ -32,6 +39,17 @@ public class GameWindow {
 
     private static final Logger logger = LogManager.getLogger(GameWindow.class);
 
+    /**
+     * The server used unless the tetrecs.server property says otherwise. Set it to "local" to run a server in process.
+     */
+    public static final String DEFAULT_SERVER = "ws://discord.ecs.soton.ac.uk:9700";
+
+    /**
+     * How long the online high scores are cached, in milliseconds, unless the tetrecs.hiscores.ttl property says
+     * otherwise
+     */
+    public static final long HISCORES_TTL = 60000;
+
     private final int width;
     private final int height;
 
@@ -42,6 +60,11 @@ public class GameWindow {
 
     final Communicator communicator;
 
+    /**
+     * The online high scores, kept between visits to the scores screen
+     */
+    private final HiScoreCache hiScores;
+
     /**
      * Create a new GameWindow attached to the given stage with the specified width and height
      * @param stage stage
@@ -64,12 +87,32 @@ public class GameWindow {
         setupDefaultScene();
 
         //Setup communicator
-        communicator = new Communicator("ws://discord.ecs.soton.ac.uk:9700");
+        communicator = new Communicator(serverUrl());
+        Metrics.register("Network", communicator::summary);
+
+        hiScores = new HiScoreCache(communicator, Long.getLong("tetrecs.hiscores.ttl", HISCORES_TTL));
+        Metrics.register("High scores", hiScores::summary);
 
         //Go to menu
         startMenu();
     }
 
+    /**
+     * Get the server to connect to, starting a local one if asked to
+     * @return the web socket URL
+     */
+    private String serverUrl() {
+        String server = System.getProperty("tetrecs.server", DEFAULT_SERVER);
+        if (!server.equals("local")) return server;
+
+        try {
+            return new LocalServer(0).getUrl();
+        } catch (IOException e) {
+            logger.error("Unable to start local server: " + e.getMessage());
+            return DEFAULT_SERVER;
+        }
+    }
+
     /**
      * Setup the font and any other resources we need
      */
@@ -120,6 +163,12 @@ public class GameWindow {
      */
     public void startGuide() { loadScene(new InstructionScene(this)); }
 
+    /**
+     * Play back a recorded game
+     * @param replay The replay
+     */
+    public void startReplay(Replay replay) { loadScene(new ReplayScene(this, replay)); }
+
     /**
      * Setup the default settings for the stage itself (the window), such as the title and minimum width and height.
      */
@@ -195,4 +244,12 @@ public class GameWindow {
     public Communicator getCommunicator() {
         return communicator;
     }
+
+    /**
+     * Get the online high scores cache
+     * @return the cache
+     */
+    public HiScoreCache getHiScores() {
+        return hiScores;
+    }
 }
\ No newline at end of file
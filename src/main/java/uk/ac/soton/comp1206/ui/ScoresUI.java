@@ -17,7 +17,8 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
 import javafx.util.Duration;
-import javafx.util.Pair;
+import uk.ac.soton.comp1206.network.Message;
+import uk.ac.soton.comp1206.utility.Leaderboard;
 
 /**
  * This class wraps the scores in a VBox UI element and animates them
@@ -86,11 +87,11 @@ public class ScoresUI extends VBox {
 		//Make a text from each score's name and value with style and colour
 		for (var i = 0; i < scores.getSize() && i < 10; i++) {
 			
-			//Take the next score out of the list property
-			Pair temp = (Pair) scores.get(i);
+			//Take the next score out of the list property, its text is already built
+			var temp = (Leaderboard.Entry) scores.get(i);
 			
 			//Get the score as a text and add css
-			var name = new Text((String) temp.getKey() + ": " + ((Integer) temp.getValue()).toString());
+			var name = new Text(temp.getText());
 			name.getStyleClass().add("scorelist");
 			
 			//Change the colour of the node on each loop
@@ -130,11 +131,11 @@ public class ScoresUI extends VBox {
 		
 		//Get each score out of the list and add to the arraylist 
 		for (var i = 0; i < scores.getSize(); i++) {
-			String temp = (String) scores.get(i);
+			var temp = (Message.PlayerScore) scores.get(i);
 			
 			//The score name: value, strike it through if the player is dead
-			var score = new Text(temp.split(":")[0] + ": " + temp.split(":")[1]);
-			if (temp.split(":")[2].equals("DEAD")) score.setStrikethrough(true);
+			var score = new Text(temp.getName() + ": " + temp.getScore());
+			if (temp.isDead()) score.setStrikethrough(true);
 			score.getStyleClass().add("scorelist");
 			
 			//Change the colour on every loop
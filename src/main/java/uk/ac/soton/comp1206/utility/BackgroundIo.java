@@ -0,0 +1,49 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The one background thread that does all the game's file work: scores, the game history and replays. Work runs in
+ * the order it was handed over, so a file opened by one task is ready for every task after it, and nothing on the UI
+ * thread waits for the disk. The thread is drained when the game shuts down.
+ */
+public class BackgroundIo {
+
+    private static final Logger logger = LogManager.getLogger(BackgroundIo.class);
+
+    /**
+     * How long shutdown waits for unfinished work
+     */
+    private static final long FLUSH_TIMEOUT = 5000;
+
+    private static final ExecutorService io = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "file-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Run a task on the background thread, after every task handed over before it
+     * @param task the task
+     */
+    public static void execute(Runnable task) {
+        io.execute(task);
+    }
+
+    /**
+     * Finish the work still waiting and stop the background thread. Called on shutdown.
+     */
+    public static void flush() {
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(FLUSH_TIMEOUT, TimeUnit.MILLISECONDS)) logger.error("Gave up waiting to save files");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.ac.soton.comp1206.game.GameResult;
+
+/**
+ * Every finished game, kept on disk as fixed-size records so any game can be read by its number. Player names and
+ * modes are stored once in a names file next to it, one per line in the order they were first seen, and referred to
+ * by their line number.
+ *
+ * Games are indexed by player and by mode. An index holds the record numbers and a sorted copy of the scores, so the
+ * best, mean and percentiles of thousands of games are answered without reading a single record. The indexes are
+ * built by one pass over the file when it is opened, and the records themselves are only read when asked for.
+ *
+ * Not thread safe, callers must use one thread at a time.
+ */
+public class GameHistory {
+
+    private static final Logger logger = LogManager.getLogger(GameHistory.class);
+
+    /**
+     * Where the game keeps its history
+     */
+    public static final Path FILE = Path.of("history.dat");
+
+    /**
+     * Finished, seed, duration, score, level, lives used, a spare byte, mode, pieces, lines, player, then the CRC of
+     * the rest. The mode and player are both numbers in the names file, so both are ints.
+     */
+    private static final int RECORD_SIZE = 8 + 8 + 4 + 4 + 2 + 1 + 1 + 4 + 4 + 4 + 4 + 4;
+
+    /**
+     * Where the score, mode and player are in a record
+     */
+    private static final int SCORE_AT = 20;
+    private static final int MODE_AT = 28;
+    private static final int PLAYER_AT = 40;
+
+    /**
+     * Aggregates over a set of games
+     */
+    public static class Stats {
+        private final int games;
+        private final int best;
+        private final double mean;
+        private final int[] sorted;
+
+        Stats(int[] sorted, long total) {
+            this.sorted = sorted;
+            this.games = sorted.length;
+            this.best = games == 0 ? 0 : sorted[games - 1];
+            this.mean = games == 0 ? 0 : (double) total / games;
+        }
+
+        /**
+         * Get the number of games
+         * @return the count
+         */
+        public int getGames() {
+            return games;
+        }
+
+        /**
+         * Get the best score
+         * @return the best score, 0 if there are no games
+         */
+        public int getBest() {
+            return best;
+        }
+
+        /**
+         * Get the mean score
+         * @return the mean, 0 if there are no games
+         */
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * Get the score at a percentile, by nearest rank
+         * @param percentile the percentile, 0 to 100
+         * @return the score, 0 if there are no games
+         */
+        public int getPercentile(double percentile) {
+            if (games == 0) return 0;
+            int rank = (int) Math.ceil(percentile / 100 * games);
+            return sorted[Math.max(0, Math.min(games - 1, rank - 1))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d games, best %d, mean %.0f, median %d, p90 %d", games, best, mean,
+                    getPercentile(50), getPercentile(90));
+        }
+    }
+
+    /**
+     * The games of one player or one mode
+     */
+    private static class Index {
+        int[] records = new int[16];
+        int[] scores = new int[16];
+        int size;
+        long total;
+
+        void add(int record, int score) {
+            if (size == records.length) {
+                records = Arrays.copyOf(records, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            records[size] = record;
+
+            //Keep the scores sorted, one binary search and one shift per game
+            int at = Arrays.binarySearch(scores, 0, size, score);
+            if (at < 0) at = -at - 1;
+            System.arraycopy(scores, at, scores, at + 1, size - at);
+            scores[at] = score;
+
+            size++;
+            total += score;
+        }
+
+        Stats stats() {
+            return new Stats(Arrays.copyOf(scores, size), total);
+        }
+    }
+
+    private final Path file;
+    private final Path namesFile;
+
+    /**
+     * The numbers of player names and modes
+     */
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private final Map<Integer, Index> byPlayer = new HashMap<>();
+    private final Map<Integer, Index> byMode = new HashMap<>();
+    private final Index all = new Index();
+
+    private int records;
+
+    /**
+     * Open the history at the given path, creating it if needed, and build the indexes
+     * @param file the path of the history
+     * @throws IOException if it cannot be read
+     */
+    public GameHistory(Path file) throws IOException {
+        this.file = file;
+        this.namesFile = file.resolveSibling(file.getFileName() + ".names");
+
+        if (Files.isRegularFile(namesFile)) {
+            //Split on newlines only, the numbers are line numbers and must match how they were written
+            var text = new String(Files.readAllBytes(namesFile), StandardCharsets.UTF_8);
+            int start = 0;
+            for (int end = text.indexOf('\n'); end >= 0; start = end + 1, end = text.indexOf('\n', start)) {
+                intern(text.substring(start, end));
+            }
+        }
+        if (Files.isRegularFile(file)) scan();
+    }
+
+    /**
+     * Open the game's own history
+     * @return the history
+     * @throws IOException if it cannot be read
+     */
+    public static GameHistory open() throws IOException {
+        return new GameHistory(FILE);
+    }
+
+    /**
+     * Add a finished game
+     * @param player who played it
+     * @param result how it went
+     * @throws IOException if it cannot be written
+     */
+    public void add(String player, GameResult result) throws IOException {
+        int playerId = id(player);
+        int modeId = id(result.getMode());
+
+        var record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(result.getFinished()).putLong(result.getSeed())
+            .putInt((int) Math.min(Integer.MAX_VALUE, result.getDuration()))
+            .putInt(result.getScore()).putShort((short) result.getLevel())
+            .put((byte) result.getLivesUsed()).put((byte) 0).putInt(modeId)
+            .putInt(result.getPieces()).putInt(result.getLines()).putInt(playerId);
+
+        var crc = new CRC32();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(record, (long) records * RECORD_SIZE);
+            channel.force(false);
+        }
+
+        index(records++, playerId, modeId, result.getScore());
+    }
+
+    /**
+     * Get the number of games
+     * @return the count
+     */
+    public int size() {
+        return records;
+    }
+
+    /**
+     * Get aggregates over every game
+     * @return the stats
+     */
+    public Stats getStats() {
+        return all.stats();
+    }
+
+    /**
+     * Get aggregates over one player's games
+     * @param player the player
+     * @return the stats, empty if the player has no games
+     */
+    public Stats getPlayerStats(String player) {
+        var index = lookup(byPlayer, player);
+        return index == null ? new Stats(new int[0], 0) : index.stats();
+    }
+
+    /**
+     * Get aggregates over the games of one mode
+     * @param mode the mode
+     * @return the stats, empty if there are no games of that mode
+     */
+    public Stats getModeStats(String mode) {
+        var index = lookup(byMode, mode);
+        return index == null ? new Stats(new int[0], 0) : index.stats();
+    }
+
+    /**
+     * Read every record once to build the indexes. A cut short or damaged tail is dropped.
+     */
+    private void scan() throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var buffer = ByteBuffer.allocate(RECORD_SIZE * 256);
+            var crc = new CRC32();
+            long position = 0;
+
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read < RECORD_SIZE) break;
+                buffer.flip();
+
+                boolean damaged = false;
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    int start = buffer.position();
+                    crc.reset();
+                    crc.update(buffer.array(), start, RECORD_SIZE - 4);
+                    if (buffer.getInt(start + RECORD_SIZE - 4) != (int) crc.getValue()) {
+                        damaged = true;
+                        break;
+                    }
+
+                    int score = buffer.getInt(start + SCORE_AT);
+                    int modeId = buffer.getInt(start + MODE_AT);
+                    int playerId = buffer.getInt(start + PLAYER_AT);
+                    index(records++, playerId, modeId, score);
+
+                    buffer.position(start + RECORD_SIZE);
+                    position += RECORD_SIZE;
+                }
+                if (damaged) break;
+            }
+
+            if (channel.size() > position) {
+                logger.warn("Dropping " + (channel.size() - position) + " bytes from the end of the game history");
+                channel.truncate(position);
+            }
+        }
+
+        logger.info("Indexed " + records + " games");
+    }
+
+    private void index(int record, int playerId, int modeId, int score) {
+        byPlayer.computeIfAbsent(playerId, (key) -> new Index()).add(record, score);
+        byMode.computeIfAbsent(modeId, (key) -> new Index()).add(record, score);
+        all.add(record, score);
+    }
+
+    private Index lookup(Map<Integer, Index> indexes, String name) {
+        var id = ids.get(name);
+        return id == null ? null : indexes.get(id);
+    }
+
+    /**
+     * Get the number of a name, adding it to the names file if it is new
+     */
+    private int id(String name) throws IOException {
+        //A line break would split the name in two and move every number after it
+        name = name.replace('\r', ' ').replace('\n', ' ');
+
+        var id = ids.get(name);
+        if (id != null) return id;
+
+        try (BufferedWriter out = Files.newBufferedWriter(namesFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(name);
+            out.write('\n');
+        }
+        return intern(name);
+    }
+
+    /**
+     * Number a name read from or written to the names file. A name is only ever written once, so a repeated line can
+     * only come from damage, and is skipped rather than shifting the numbers after it.
+     */
+    private int intern(String name) {
+        var id = ids.get(name);
+        if (id != null) return id;
+
+        ids.put(name, ids.size());
+        return ids.size() - 1;
+    }
+}
@@ -0,0 +1,100 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javafx.application.Platform;
+import uk.ac.soton.comp1206.game.GameResult;
+
+/**
+ * The GameHistory of finished games, shared by every scene. It is opened on the BackgroundIo thread the first time it
+ * is used and only touched there, so games are recorded and asked about through callbacks.
+ */
+public class HistoryRepository {
+
+    private static final Logger logger = LogManager.getLogger(HistoryRepository.class);
+
+    /**
+     * The history, only used on the io thread
+     */
+    private static GameHistory history;
+
+    /**
+     * Whether opening the history has been tried, only used on the io thread
+     */
+    private static boolean opened;
+
+    /**
+     * Get the name games are recorded under when there is no other, the tetrecs.player property or the user name
+     * @return the name
+     */
+    public static String getPlayer() {
+        return System.getProperty("tetrecs.player", System.getProperty("user.name", "player"));
+    }
+
+    /**
+     * Add a finished game to the history, in the background
+     * @param player who played it
+     * @param result how it went
+     */
+    public static void recordGame(String player, GameResult result) {
+        if (result == null) return;
+
+        BackgroundIo.execute(() -> {
+            if (history() == null) {
+                logger.error("No game history, not recording a game scoring " + result.getScore());
+                return;
+            }
+            try {
+                history.add(player, result);
+            } catch (IOException e) {
+                logger.error("Could not record game: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Get aggregates over one player's games, in the background
+     * @param player the player
+     * @param callback called on the UI thread with the stats
+     */
+    public static void getPlayerStats(String player, Consumer<GameHistory.Stats> callback) {
+        BackgroundIo.execute(() -> {
+            if (history() == null) return;
+            var stats = history.getPlayerStats(player);
+            Platform.runLater(() -> callback.accept(stats));
+        });
+    }
+
+    /**
+     * Get aggregates over the games of one mode, in the background
+     * @param mode the mode
+     * @param callback called on the UI thread with the stats
+     */
+    public static void getModeStats(String mode, Consumer<GameHistory.Stats> callback) {
+        BackgroundIo.execute(() -> {
+            if (history() == null) return;
+            var stats = history.getModeStats(mode);
+            Platform.runLater(() -> callback.accept(stats));
+        });
+    }
+
+    /**
+     * Get the history, opening it the first time. Called on the io thread.
+     * @return the history, or null if it could not be opened
+     */
+    private static GameHistory history() {
+        if (!opened) {
+            opened = true;
+            try {
+                history = GameHistory.open();
+            } catch (IOException e) {
+                logger.error("Could not load the game history: " + e.getMessage());
+            }
+        }
+        return history;
+    }
+}
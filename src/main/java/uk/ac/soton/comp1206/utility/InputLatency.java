@@ -0,0 +1,82 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.util.ArrayList;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javafx.application.Platform;
+
+/**
+ * Measures the time from a key press or mouse click to the first frame that shows its result.
+ *
+ * The input is timestamped when it is handled, the game marks it as applied once the UI has received the resulting
+ * state, and the next pulse after that records the latency. All methods are called on the UI thread.
+ */
+public class InputLatency {
+
+    private static final Logger logger = LogManager.getLogger(InputLatency.class);
+
+    /**
+     * Where an input came from
+     */
+    public enum Source { KEYBOARD, MOUSE }
+
+    /**
+     * Latencies of keyboard input, in microseconds
+     */
+    private static final LatencyHistogram keyboard = new LatencyHistogram("us");
+
+    /**
+     * Latencies of mouse input, in microseconds
+     */
+    private static final LatencyHistogram mouse = new LatencyHistogram("us");
+
+    /**
+     * Inputs applied but not yet rendered, as source ordinal and timestamp pairs
+     */
+    private static final ArrayList<long[]> pending = new ArrayList<long[]>();
+
+    static {
+        Metrics.register("Input", InputLatency::summary);
+    }
+
+    /**
+     * Mark an input as applied to the UI. It is recorded when the next frame is rendered.
+     * @param source where the input came from
+     * @param inputTime the System.nanoTime() when the input was handled
+     */
+    public static void applied(Source source, long inputTime) {
+        pending.add(new long[] {source.ordinal(), inputTime});
+        Platform.requestNextPulse();
+    }
+
+    /**
+     * Called after layout on every pulse, just before the frame is rendered
+     */
+    public static void frameRendered() {
+        if (pending.isEmpty()) return;
+
+        long now = System.nanoTime();
+        for (var input : pending) {
+            var histogram = input[0] == Source.KEYBOARD.ordinal() ? keyboard : mouse;
+            histogram.record((now - input[1]) / 1000);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Get a summary of the latencies
+     * @return one line for each input source
+     */
+    public static String summary() {
+        return "Keyboard " + keyboard + "\nMouse " + mouse;
+    }
+
+    /**
+     * Write the summary to the log
+     */
+    public static void dump() {
+        logger.info("Input to frame latency\n" + summary());
+    }
+}
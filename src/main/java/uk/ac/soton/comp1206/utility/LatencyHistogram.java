@@ -0,0 +1,146 @@
+package uk.ac.soton.comp1206.utility;
+
+/**
+ * A histogram of latencies in the style of HdrHistogram. Values below 64 are counted exactly, larger values go into
+ * log-linear buckets with 32 steps per power of two, so every recorded value is kept to within about 3% without
+ * storing the values themselves. Recording does not allocate.
+ *
+ * Not thread safe, record from a single thread.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Number of linear steps per power of two
+	 */
+	private static final int SUB_BUCKETS = 32;
+
+	/**
+	 * Values below this are counted exactly
+	 */
+	private static final int LINEAR = 2 * SUB_BUCKETS;
+
+	/**
+	 * Power of two of the first log-linear bucket
+	 */
+	private static final int FIRST_EXPONENT = 6;
+
+	/**
+	 * The counts for each bucket, covering every positive long
+	 */
+	private final long[] counts = new long[LINEAR + (63 - FIRST_EXPONENT) * SUB_BUCKETS];
+
+	/**
+	 * The unit of the values, used when printing
+	 */
+	private final String unit;
+
+	private long count;
+
+	private long total;
+
+	private long max;
+
+	/**
+	 * Create a new empty histogram
+	 * @param unit the unit of the recorded values, used when printing
+	 */
+	public LatencyHistogram(String unit) {
+		this.unit = unit;
+	}
+
+	/**
+	 * Record a value. Negative values are counted as 0.
+	 * @param value the value
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+
+		counts[indexOf(value)]++;
+		count++;
+		total += value;
+		if (value > max) max = value;
+	}
+
+	/**
+	 * Get the bucket a value is counted in
+	 * @param value the value
+	 * @return the index of the bucket
+	 */
+	private static int indexOf(long value) {
+		if (value < LINEAR) return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - 5)) & (SUB_BUCKETS - 1);
+		return LINEAR + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Get the highest value counted in a bucket
+	 * @param index the index of the bucket
+	 * @return the highest value
+	 */
+	private static long highestValueOf(int index) {
+		if (index < LINEAR) return index;
+
+		int exponent = (index - LINEAR) / SUB_BUCKETS + FIRST_EXPONENT;
+		long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << (exponent - 5)) - 1;
+	}
+
+	/**
+	 * Get the value at the given percentile
+	 * @param percentile between 0 and 100
+	 * @return the value, or 0 if nothing has been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (count == 0) return 0;
+
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+
+		for (var i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= target) return Math.min(highestValueOf(i), max);
+		}
+
+		return max;
+	}
+
+	/**
+	 * Get the number of values recorded
+	 * @return the count
+	 */
+	public long getCount() { return count; }
+
+	/**
+	 * Get the largest value recorded
+	 * @return the maximum, or 0 if nothing has been recorded
+	 */
+	public long getMax() { return max; }
+
+	/**
+	 * Get the mean of the values recorded
+	 * @return the mean, or 0 if nothing has been recorded
+	 */
+	public double getMean() { return count == 0 ? 0 : (double) total / count; }
+
+	/**
+	 * Remove every recorded value
+	 */
+	public void reset() {
+		java.util.Arrays.fill(counts, 0);
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	/**
+	 * Return a one line summary of the histogram
+	 * @return the count, mean, percentiles and maximum
+	 */
+	public String toString() {
+		return String.format("n=%d mean=%.0f%s p50=%d%s p90=%d%s p99=%d%s max=%d%s", count,
+				getMean(), unit, getValueAtPercentile(50), unit, getValueAtPercentile(90), unit,
+				getValueAtPercentile(99), unit, max, unit);
+	}
+}
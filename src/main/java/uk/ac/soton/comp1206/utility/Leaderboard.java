@@ -0,0 +1,210 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The best few scores out of any number offered. The scores are kept in a min-heap of plain ints, with the worst kept
+ * score at the root, so offering a score costs O(log K) and a score too low to make the board is turned away after one
+ * comparison. Equal scores rank in the order they were offered.
+ *
+ * The entries handed out are built once, already sorted and with their text ready, and reused until the board changes.
+ */
+public class Leaderboard {
+
+    /**
+     * One place on the board
+     */
+    public static class Entry {
+        private final String name;
+        private final int score;
+        private final String text;
+
+        Entry(String name, int score) {
+            this.name = name;
+            this.score = score;
+            this.text = name + ": " + score;
+        }
+
+        /**
+         * Get the name
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the score
+         * @return the score
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Get the text to show, name: score
+         * @return the text
+         */
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private final int capacity;
+
+    /**
+     * The heap, as parallel arrays
+     */
+    private final int[] scores;
+    private final long[] order;
+    private final String[] names;
+
+    private int size;
+
+    /**
+     * The number of scores offered so far, used to rank equal scores
+     */
+    private long offered;
+
+    /**
+     * The sorted entries, or null if the board changed since they were built
+     */
+    private List<Entry> entries;
+
+    /**
+     * Create an empty board
+     * @param capacity the number of scores kept
+     */
+    public Leaderboard(int capacity) {
+        this.capacity = capacity;
+        scores = new int[capacity];
+        order = new long[capacity];
+        names = new String[capacity];
+    }
+
+    /**
+     * Offer a score
+     * @param name the name
+     * @param score the score
+     * @return whether the score made the board
+     */
+    public boolean add(String name, int score) {
+        long position = offered++;
+
+        if (size < capacity) {
+            set(size, name, score, position);
+            siftUp(size++);
+        } else if (capacity > 0 && score > scores[0]) {
+            set(0, name, score, position);
+            siftDown(0);
+        } else {
+            return false;
+        }
+
+        entries = null;
+        return true;
+    }
+
+    /**
+     * Get the lowest score on the board
+     * @return the lowest score, or 0 if the board is empty
+     */
+    public int getLowest() {
+        return size == 0 ? 0 : scores[0];
+    }
+
+    /**
+     * Get the number of scores on the board
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove every score
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) names[i] = null;
+        size = 0;
+        entries = null;
+    }
+
+    /**
+     * Get the board, best first
+     * @return the entries, which must not be changed
+     */
+    public List<Entry> entries() {
+        if (entries != null) return entries;
+
+        //Insertion sort of heap indexes, best first. The board is small, so this beats anything cleverer.
+        int[] index = new int[size];
+        for (int i = 0; i < size; i++) {
+            int j = i;
+            while (j > 0 && worse(index[j - 1], i)) {
+                index[j] = index[j - 1];
+                j--;
+            }
+            index[j] = i;
+        }
+
+        var list = new ArrayList<Entry>(size);
+        for (int i : index) list.add(new Entry(names[i], scores[i]));
+        entries = Collections.unmodifiableList(list);
+        return entries;
+    }
+
+    /**
+     * Whether the score at a ranks below the score at b
+     */
+    private boolean worse(int a, int b) {
+        return scores[a] < scores[b] || (scores[a] == scores[b] && order[a] > order[b]);
+    }
+
+    private void set(int i, String name, int score, long position) {
+        names[i] = name;
+        scores[i] = score;
+        order[i] = position;
+    }
+
+    private void swap(int a, int b) {
+        int score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+
+        long position = order[a];
+        order[a] = order[b];
+        order[b] = position;
+
+        String name = names[a];
+        names[a] = names[b];
+        names[b] = name;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!worse(i, parent)) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) return;
+            if (child + 1 < size && worse(child + 1, child)) child++;
+            if (!worse(child, i)) return;
+            swap(i, child);
+            i = child;
+        }
+    }
+}
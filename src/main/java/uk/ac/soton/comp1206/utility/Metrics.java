@@ -0,0 +1,58 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A registry of named statistics, so the debug overlay and the log on exit can show everything that is being
+ * measured without knowing where it comes from.
+ */
+public class Metrics {
+
+    private static final Logger logger = LogManager.getLogger(Metrics.class);
+
+    /**
+     * The registered sections by name, in the order they were registered
+     */
+    private static final Map<String, Supplier<String>> sections = new LinkedHashMap<String, Supplier<String>>();
+
+    /**
+     * Register a section, replacing any section with the same name
+     * @param name the name of the section
+     * @param section supplies the text of the section
+     */
+    public static synchronized void register(String name, Supplier<String> section) {
+        sections.put(name, section);
+    }
+
+    /**
+     * Remove a section
+     * @param name the name of the section
+     */
+    public static synchronized void unregister(String name) {
+        sections.remove(name);
+    }
+
+    /**
+     * Get the text of every section
+     * @return each section under its name
+     */
+    public static synchronized String summary() {
+        var text = new StringBuilder();
+        for (var entry : sections.entrySet()) {
+            text.append("[").append(entry.getKey()).append("]\n").append(entry.getValue().get()).append("\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Write every section to the log
+     */
+    public static void dump() {
+        logger.info("Metrics\n" + summary());
+    }
+}
@@ -0,0 +1,70 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javafx.application.Platform;
+import uk.ac.soton.comp1206.game.Replay;
+
+/**
+ * The replays of finished games, one file each in the replays folder, saved and found on the BackgroundIo thread
+ */
+public class ReplayRepository {
+
+    private static final Logger logger = LogManager.getLogger(ReplayRepository.class);
+
+    /**
+     * Where replays of finished games are saved
+     */
+    public static final Path REPLAYS = Path.of("replays");
+
+    /**
+     * Save the replay of a finished game, in the background
+     * @param replay the replay
+     */
+    public static void saveReplay(byte[] replay) {
+        long finished = System.currentTimeMillis();
+
+        BackgroundIo.execute(() -> {
+            try {
+                Files.createDirectories(REPLAYS);
+                Files.write(REPLAYS.resolve(finished + ".replay"), replay);
+            } catch (IOException e) {
+                logger.error("Could not save replay: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Find the newest replay that can be played back, in the background
+     * @param callback called on the UI thread with the replay, not called if there is none
+     */
+    public static void loadLatestReplay(Consumer<Replay> callback) {
+        BackgroundIo.execute(() -> {
+            try (var files = Files.list(REPLAYS)) {
+                var paths = files.filter((path) -> path.toString().endsWith(".replay"))
+                    .sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+
+                for (var path : paths) {
+                    try {
+                        var replay = new Replay(Files.readAllBytes(path));
+                        if (!replay.isPlayable()) continue;
+                        Platform.runLater(() -> callback.accept(replay));
+                        return;
+                    } catch (IllegalArgumentException e) {
+                        logger.warn("Skipping replay " + path + ": " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                logger.info("No replays: " + e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,155 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javafx.application.Platform;
+import javafx.util.Pair;
+
+/**
+ * The local scores, shared by every scene. The ScoreStore is opened on the BackgroundIo thread when the game starts,
+ * and from then on the best scores are served from memory. Saving a score updates memory straight away and writes it
+ * to disk later on the same thread.
+ *
+ * Nothing here touches the disk on the calling thread.
+ */
+public class ScoreRepository {
+
+    private static final Logger logger = LogManager.getLogger(ScoreRepository.class);
+
+    /**
+     * The store, only used on the io thread
+     */
+    private static ScoreStore store;
+
+    /**
+     * The best scores, highest first
+     */
+    private static final List<Pair<String, Integer>> top = new ArrayList<>();
+
+    private static boolean loaded;
+
+    private static boolean loading;
+
+    /**
+     * Callbacks waiting for the scores to load
+     */
+    private static final List<Consumer<List<Pair<String, Integer>>>> waiting = new ArrayList<>();
+
+    /**
+     * Start loading the scores in the background. Does nothing if they are already loading.
+     */
+    public static synchronized void load() {
+        if (loading) return;
+        loading = true;
+
+        BackgroundIo.execute(() -> {
+            List<Pair<String, Integer>> scores = new ArrayList<>();
+            try {
+                store = ScoreStore.open();
+                scores = store.getTop();
+                logger.info("Loaded " + scores.size() + " local scores");
+            } catch (IOException e) {
+                logger.error("Could not load scores: " + e.getMessage());
+            }
+            loaded(scores);
+        });
+    }
+
+    /**
+     * Run a callback on the UI thread with the best scores, once they have loaded
+     * @param callback the callback
+     */
+    public static synchronized void whenLoaded(Consumer<List<Pair<String, Integer>>> callback) {
+        load();
+        if (loaded) {
+            var scores = new ArrayList<>(top);
+            Platform.runLater(() -> callback.accept(scores));
+        } else {
+            waiting.add(callback);
+        }
+    }
+
+    /**
+     * Get the best local score. Use whenLoaded to be sure the scores have loaded.
+     * @return the high score, or 0 if the scores have not loaded yet
+     */
+    public static synchronized int getHighScore() {
+        return top.isEmpty() ? 0 : top.get(0).getValue();
+    }
+
+    /**
+     * Get the best local scores
+     * @return a copy of the scores, highest first, empty if they have not loaded yet
+     */
+    public static synchronized List<Pair<String, Integer>> getTop() {
+        return new ArrayList<>(top);
+    }
+
+    /**
+     * Save a score. It is visible straight away and written to disk in the background.
+     * @param name the name
+     * @param score the score
+     */
+    public static void submit(String name, int score) {
+        synchronized (ScoreRepository.class) {
+            insert(name, score);
+        }
+
+        BackgroundIo.execute(() -> {
+            if (store == null) {
+                logger.error("No score store, not saving " + name + ": " + score);
+                return;
+            }
+            try {
+                store.append(name, score);
+            } catch (IOException e) {
+                logger.error("Could not save score: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Called on the io thread when the store has been read
+     */
+    private static void loaded(List<Pair<String, Integer>> scores) {
+        List<Consumer<List<Pair<String, Integer>>>> callbacks;
+        List<Pair<String, Integer>> current;
+
+        synchronized (ScoreRepository.class) {
+            //Keep anything submitted while loading
+            var submitted = new ArrayList<>(top);
+            top.clear();
+            top.addAll(scores);
+            for (var score : submitted) insert(score.getKey(), score.getValue());
+
+            loaded = true;
+            callbacks = new ArrayList<>(waiting);
+            waiting.clear();
+            current = new ArrayList<>(top);
+        }
+
+        if (!callbacks.isEmpty()) {
+            Platform.runLater(() -> {
+                for (var callback : callbacks) callback.accept(current);
+            });
+        }
+    }
+
+    /**
+     * Put a score into the in-memory top list if it belongs there
+     */
+    private static void insert(String name, int score) {
+        int index = 0;
+        while (index < top.size() && top.get(index).getValue() >= score) index++;
+        if (index >= ScoreStore.TOP) return;
+
+        top.add(index, new Pair<>(name, score));
+        if (top.size() > ScoreStore.TOP) top.remove(ScoreStore.TOP);
+    }
+}
@@ -0,0 +1,385 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javafx.util.Pair;
+
+/**
+ * The local scores, kept in a binary file: a fixed-size header holding the best TOP scores, followed by a log of every
+ * score ever saved. Reading the best scores only reads the header, and saving a score appends one record and rewrites
+ * the header in place, so it costs the same however many scores there are.
+ *
+ * Every record and the header carry a CRC32. A record cut short by a crash is dropped on open, and a header that does
+ * not match its CRC is rebuilt from the log. The log is compacted to the best KEEP scores once it holds COMPACT_AT
+ * records, by writing a new file and renaming it over the old one.
+ *
+ * Not thread safe, callers must use one thread at a time.
+ */
+public class ScoreStore {
+
+    private static final Logger logger = LogManager.getLogger(ScoreStore.class);
+
+    /**
+     * The number of scores held in the header
+     */
+    public static final int TOP = 10;
+
+    /**
+     * The number of records that triggers compaction
+     */
+    public static final int COMPACT_AT = 1000;
+
+    /**
+     * The number of records kept by compaction
+     */
+    public static final int KEEP = 100;
+
+    /**
+     * The longest name stored, in UTF-8 bytes. Longer names are cut short.
+     */
+    public static final int NAME_BYTES = 24;
+
+    /**
+     * Where the game keeps its scores
+     */
+    public static final Path FILE = Path.of("scores.dat");
+
+    /**
+     * The text file used by older versions
+     */
+    public static final Path LEGACY = Path.of("localScores.txt");
+
+    private static final int MAGIC = 0x54534352;
+    private static final short VERSION = 1;
+
+    /**
+     * Magic, version, entry count, record count, end of the log, then TOP entries of name length, name and score,
+     * then the CRC
+     */
+    private static final int ENTRY_SIZE = 1 + NAME_BYTES + 4;
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 4 + 8 + TOP * ENTRY_SIZE + 8;
+
+    private final Path file;
+
+    /**
+     * The best scores, highest first
+     */
+    private final List<Pair<String, Integer>> top = new ArrayList<>();
+
+    /**
+     * The number of records in the log
+     */
+    private int records;
+
+    /**
+     * Where the last whole record ends. Anything after it was cut short and is written over.
+     */
+    private long end;
+
+    /**
+     * Open the store at the given path, creating it if needed. If it does not exist but a localScores.txt from an
+     * older version does, the scores are imported from it.
+     * @param file the path of the store
+     * @param legacy the old text file, name:score per line, or null
+     * @throws IOException if the store cannot be read or created
+     */
+    public ScoreStore(Path file, Path legacy) throws IOException {
+        this.file = file;
+
+        if (!Files.isRegularFile(file)) {
+            create(legacy);
+            return;
+        }
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (!readHeader(channel)) {
+                logger.warn("Score header is damaged, rebuilding it from the log");
+                rebuild(channel);
+            } else if (channel.size() > end) {
+                logger.warn("Dropping " + (channel.size() - end) + " bytes of an unfinished score");
+                channel.truncate(end);
+            }
+        }
+    }
+
+    /**
+     * Open the game's own store
+     * @return the store
+     * @throws IOException if the store cannot be read or created
+     */
+    public static ScoreStore open() throws IOException {
+        return new ScoreStore(FILE, LEGACY);
+    }
+
+    /**
+     * Get the best scores, highest first
+     * @return a copy of the scores
+     */
+    public List<Pair<String, Integer>> getTop() {
+        return new ArrayList<>(top);
+    }
+
+    /**
+     * Get the number of scores in the log
+     * @return the number of records
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * Save a score. Appends one record and rewrites the header, then syncs the file.
+     * @param name the name
+     * @param score the score
+     * @throws IOException if it cannot be written
+     */
+    public void append(String name, int score) throws IOException {
+        name = clip(name);
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            var record = ByteBuffer.wrap(record(name, score));
+            channel.write(record, end);
+            end += record.capacity();
+            records++;
+
+            insertTop(name, score);
+            writeHeader(channel);
+            channel.force(false);
+        }
+
+        if (records >= COMPACT_AT) compact();
+    }
+
+    /**
+     * Read every score in the log, in the order they were saved
+     * @return the scores
+     * @throws IOException if the log cannot be read
+     */
+    public List<Pair<String, Integer>> readAll() throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readLog(channel, end);
+        }
+    }
+
+    /**
+     * Rewrite the store with only the best KEEP scores, replacing the old file in one rename
+     * @throws IOException if it cannot be written
+     */
+    public void compact() throws IOException {
+        var all = readAll();
+        all.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        var kept = all.subList(0, Math.min(KEEP, all.size()));
+
+        logger.info("Compacting " + all.size() + " scores to " + kept.size());
+        write(kept);
+    }
+
+    /**
+     * Create the store, importing the old text file or writing the default scores
+     */
+    private void create(Path legacy) throws IOException {
+        var scores = new ArrayList<Pair<String, Integer>>();
+
+        if (legacy != null && Files.isRegularFile(legacy)) {
+            try (BufferedReader reader = Files.newBufferedReader(legacy)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int colon = line.lastIndexOf(':');
+                    if (colon < 0) continue;
+                    try {
+                        scores.add(new Pair<>(line.substring(0, colon), Integer.parseInt(line.substring(colon + 1).trim())));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Skipping bad score " + line);
+                    }
+                }
+            }
+            logger.info("Imported " + scores.size() + " scores from " + legacy);
+        } else {
+            for (int i = 1000; i <= 10000; i += 1000) scores.add(new Pair<>("test", i));
+        }
+
+        write(scores);
+    }
+
+    /**
+     * Write a whole new store to a temporary file and move it into place
+     */
+    private void write(List<Pair<String, Integer>> scores) throws IOException {
+        top.clear();
+        records = 0;
+        end = HEADER_SIZE;
+
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            var log = new ByteArrayOutputStream();
+            for (var score : scores) {
+                String name = clip(score.getKey());
+                log.write(record(name, score.getValue()));
+                insertTop(name, score.getValue());
+                records++;
+            }
+            end += log.size();
+
+            writeHeader(channel);
+            channel.write(ByteBuffer.wrap(log.toByteArray()), HEADER_SIZE);
+            channel.force(true);
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the header into memory
+     * @return false if the header is missing or damaged
+     */
+    private boolean readHeader(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) return false;
+
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+
+        var crc = new CRC32();
+        crc.update(header.array(), 0, HEADER_SIZE - 8);
+        if (header.getInt() != MAGIC || header.getShort() != VERSION) return false;
+        if (header.getLong(HEADER_SIZE - 8) != crc.getValue()) return false;
+
+        int count = header.getShort();
+        records = header.getInt();
+        end = header.getLong();
+        if (count < 0 || count > TOP || end < HEADER_SIZE || end > channel.size()) return false;
+
+        top.clear();
+        for (int i = 0; i < TOP; i++) {
+            int length = header.get() & 0xFF;
+            byte[] name = new byte[NAME_BYTES];
+            header.get(name);
+            int score = header.getInt();
+            if (i < count) top.add(new Pair<>(new String(name, 0, Math.min(length, NAME_BYTES), StandardCharsets.UTF_8), score));
+        }
+        return true;
+    }
+
+    /**
+     * Work out the header again from the log, dropping anything after the last whole record
+     */
+    private void rebuild(FileChannel channel) throws IOException {
+        var scores = readLog(channel, channel.size());
+        write(scores);
+    }
+
+    /**
+     * Read every whole record between the header and the given offset. A damaged or incomplete record ends the log.
+     */
+    private List<Pair<String, Integer>> readLog(FileChannel channel, long limit) throws IOException {
+        var scores = new ArrayList<Pair<String, Integer>>();
+        long size = Math.min(channel.size(), limit) - HEADER_SIZE;
+        if (size <= 0) return scores;
+
+        var log = ByteBuffer.allocate((int) size);
+        channel.read(log, HEADER_SIZE);
+        log.flip();
+
+        while (log.remaining() >= 1 + 4 + 8) {
+            int start = log.position();
+            int length = log.get() & 0xFF;
+            if (length > NAME_BYTES || log.remaining() < length + 4 + 8) break;
+
+            byte[] name = new byte[length];
+            log.get(name);
+            int score = log.getInt();
+            long stored = log.getLong();
+
+            var crc = new CRC32();
+            crc.update(log.array(), start, 1 + length + 4);
+            if (crc.getValue() != stored) {
+                logger.warn("Damaged score record at " + start + ", ignoring the rest of the log");
+                break;
+            }
+
+            scores.add(new Pair<>(new String(name, StandardCharsets.UTF_8), score));
+        }
+
+        return scores;
+    }
+
+    /**
+     * Write the header at the start of the file
+     */
+    private void writeHeader(FileChannel channel) throws IOException {
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) top.size()).putInt(records).putLong(end);
+
+        for (int i = 0; i < TOP; i++) {
+            byte[] name = i < top.size() ? top.get(i).getKey().getBytes(StandardCharsets.UTF_8) : new byte[0];
+            header.put((byte) name.length);
+            header.put(name);
+            header.position(header.position() + NAME_BYTES - name.length);
+            header.putInt(i < top.size() ? top.get(i).getValue() : 0);
+        }
+
+        var crc = new CRC32();
+        crc.update(header.array(), 0, HEADER_SIZE - 8);
+        header.putLong(crc.getValue());
+
+        header.flip();
+        channel.write(header, 0);
+    }
+
+    /**
+     * A log record: name length, name, score, then the CRC of all three
+     */
+    private static byte[] record(String name, int score) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        var record = new ByteArrayOutputStream(1 + bytes.length + 4 + 8);
+        var out = new DataOutputStream(record);
+        out.writeByte(bytes.length);
+        out.write(bytes);
+        out.writeInt(score);
+
+        var crc = new CRC32();
+        crc.update(record.toByteArray());
+        out.writeLong(crc.getValue());
+        return record.toByteArray();
+    }
+
+    /**
+     * Put a score into the top list if it belongs there
+     */
+    private void insertTop(String name, int score) {
+        int index = 0;
+        while (index < top.size() && top.get(index).getValue() >= score) index++;
+        if (index >= TOP) return;
+
+        top.add(index, new Pair<>(name, score));
+        if (top.size() > TOP) top.remove(TOP);
+    }
+
+    /**
+     * Cut a name to at most NAME_BYTES of UTF-8 without splitting a character
+     */
+    private static String clip(String name) {
+        if (name == null) return "";
+        while (name.getBytes(StandardCharsets.UTF_8).length > NAME_BYTES) {
+            name = name.substring(0, name.offsetByCodePoints(name.length(), -1));
+        }
+        return name;
+    }
+}
@@ -0,0 +1,124 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs games headless: the loop runs on the test thread, UI updates are dropped and time only moves when the
+ * VirtualClock is advanced
+ */
+class GameTest {
+
+	/**
+	 * The piece number of the dot, a single block
+	 */
+	private static final int DOT = 3;
+
+	private final VirtualClock clock = new VirtualClock();
+
+	private final Game game = new Game(5, 5, Runnable::run, (update) -> { }, clock);
+
+	/**
+	 * Deals the same piece every time
+	 */
+	private static PieceGenerator only(int piece) {
+		return new PieceGenerator() {
+			@Override
+			public int next() { return piece; }
+
+			@Override
+			public long getSeed() { return 0; }
+
+			@Override
+			public String getType() { return "only"; }
+		};
+	}
+
+	@Test
+	void timeoutCostsALife() {
+		game.start();
+		long period = game.getTimePeriod();
+
+		clock.advance(period - 1);
+		assertEquals(Game.LIVES, game.snapshot().getLives());
+
+		clock.advance(1);
+		assertEquals(Game.LIVES - 1, game.snapshot().getLives());
+	}
+
+	@Test
+	void placingAPieceRestartsTheTimer() {
+		game.setPieceGenerator(only(DOT));
+		game.start();
+		long period = game.getTimePeriod();
+
+		clock.advance(period - 1);
+		game.submit(GameCommand.place(0, 0));
+		clock.advance(period - 1);
+
+		assertEquals(Game.LIVES, game.snapshot().getLives());
+	}
+
+	@Test
+	void runningOutOfLivesEndsTheGame() {
+		game.start();
+
+		for (int i = 0; i < Game.LIVES; i++) clock.runNext();
+		assertNull(game.getResult());
+
+		clock.runNext();
+		assertNotNull(game.getResult());
+		assertEquals(0, clock.pending(), "no timer is left running");
+	}
+
+	@Test
+	void nothingHappensAfterTheGameEnds() {
+		game.setPieceGenerator(only(DOT));
+		game.start();
+		for (int i = 0; i <= Game.LIVES; i++) clock.runNext();
+		var result = game.getResult();
+
+		//A placement queued before the scene left must not place a piece or start a new timer
+		game.submit(GameCommand.place(0, 0));
+		game.submit(GameCommand.bot());
+		game.submit(GameCommand.timeout(game.timerGeneration));
+
+		assertEquals(0, game.piecesPlaced);
+		assertEquals(0, clock.pending());
+		assertEquals(-1, game.snapshot().getLives());
+		assertSame(result, game.getResult(), "the game only ends once");
+	}
+
+	@Test
+	void clearingALineScoresWithTheMultiplier() {
+		game.setPieceGenerator(only(DOT));
+		game.start();
+
+		//Five dots down x fill the line at y 0: 1 line of 5 blocks, times 10, times a multiplier of 1
+		for (int x = 0; x < 5; x++) game.submit(GameCommand.place(x, 0));
+		var state = game.snapshot();
+		assertEquals(50, state.getScore());
+		assertEquals(2, state.getMultiplier());
+		for (int x = 0; x < 5; x++) assertEquals(0, state.getCell(x, 0));
+
+		//A placement that clears nothing resets the multiplier
+		game.submit(GameCommand.place(0, 1));
+		assertEquals(1, game.snapshot().getMultiplier());
+		assertEquals(50, game.snapshot().getScore());
+	}
+
+	@Test
+	void aPieceThatDoesNotFitIsNotPlaced() {
+		game.setPieceGenerator(only(DOT));
+		game.start();
+
+		game.submit(GameCommand.place(2, 2));
+		game.submit(GameCommand.place(2, 2));
+
+		assertEquals(1, game.piecesPlaced);
+	}
+}
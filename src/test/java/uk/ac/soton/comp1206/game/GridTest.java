@@ -0,0 +1,120 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the fill counts of each line follow the cells, and that the masks of removed lines match what was full
+ */
+class GridTest {
+
+	/**
+	 * The piece number of the dot, a single block
+	 */
+	private static final int DOT = 3;
+
+	private static void dot(Grid grid, int x, int y) {
+		grid.playPiece(GamePiece.createPiece(DOT), x, y);
+	}
+
+	@Test
+	void aFullRowIsRemoved() {
+		var grid = new Grid(5, 5);
+		for (var y = 0; y < 4; y++) dot(grid, 2, y);
+		assertEquals(0, grid.getRowsRemoved());
+
+		dot(grid, 2, 4);
+		assertEquals(1L << 2, grid.getRowsRemoved());
+		assertEquals(0, grid.getColsRemoved());
+		assertEquals(1, grid.getRowsCleared());
+		for (var y = 0; y < 5; y++) assertEquals(0, grid.get(2, y));
+	}
+
+	@Test
+	void aRowAndAColCrossingAreBothRemoved() {
+		var grid = new Grid(5, 5);
+		for (var i = 0; i < 5; i++) {
+			if (i != 1) dot(grid, 3, i);
+			if (i != 3) dot(grid, i, 1);
+		}
+
+		dot(grid, 3, 1);
+		assertEquals(1L << 3, grid.getRowsRemoved());
+		assertEquals(1L << 1, grid.getColsRemoved());
+		assertEquals(1, grid.getRowsCleared());
+		assertEquals(1, grid.getColsCleared());
+	}
+
+	@Test
+	void overwritingAFilledCellIsNotCountedTwice() {
+		var grid = new Grid(5, 5);
+		for (var y = 0; y < 4; y++) {
+			grid.set(0, y, 1);
+			grid.set(0, y, 2);
+		}
+
+		//Four blocks, so the row is still one short
+		grid.updateGrid(1L, 0b1111L);
+		assertEquals(0, grid.getRowsRemoved());
+
+		grid.set(0, 4, 1);
+		grid.updateGrid(1L, 1L << 4);
+		assertEquals(1L, grid.getRowsRemoved());
+	}
+
+	@Test
+	void clearedCellsAreUncounted() {
+		var grid = new Grid(5, 5);
+		for (var y = 0; y < 5; y++) dot(grid, 1, y);
+		assertEquals(1L << 1, grid.getRowsRemoved());
+
+		//The row was emptied, so it takes five more blocks to fill again
+		for (var y = 0; y < 4; y++) dot(grid, 1, y);
+		assertEquals(0, grid.getRowsRemoved());
+	}
+
+	@Test
+	void onlyLinesWithPlacedBlocksAreChecked() {
+		var grid = new Grid(5, 5);
+		for (var y = 0; y < 5; y++) grid.set(4, y, 1);
+
+		//The full row was not touched by the placement
+		grid.updateGrid(1L, 1L);
+		assertEquals(0, grid.getRowsRemoved());
+
+		grid.updateGrid(1L << 4, 1L);
+		assertEquals(1L << 4, grid.getRowsRemoved());
+	}
+
+	@Test
+	void clearDataForgetsTheRemovedLines() {
+		var grid = new Grid(5, 5);
+		for (var y = 0; y < 5; y++) dot(grid, 0, y);
+		assertEquals(1, grid.getRowsCleared());
+
+		grid.clearData();
+		assertEquals(0, grid.getRowsRemoved());
+		assertEquals(0, grid.getColsRemoved());
+	}
+
+	@Test
+	void theLastLineOfTheLargestGridUsesTheTopBit() {
+		int last = Grid.MAX_SIZE - 1;
+		var grid = new Grid(Grid.MAX_SIZE, 2);
+		grid.set(last, 0, 1);
+		grid.set(last, 1, 1);
+
+		grid.updateGrid(1L << last, 0b11L);
+		assertEquals(Long.MIN_VALUE, grid.getRowsRemoved());
+		assertEquals(1, grid.getRowsCleared());
+		assertEquals(0, grid.get(last, 0));
+	}
+
+	@Test
+	void gridsLargerThanAMaskAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new Grid(Grid.MAX_SIZE + 1, 5));
+		assertThrows(IllegalArgumentException.class, () -> new Grid(5, Grid.MAX_SIZE + 1));
+	}
+}
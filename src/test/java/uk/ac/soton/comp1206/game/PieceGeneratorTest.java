@@ -0,0 +1,114 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that every generator deals the same pieces from the same seed, and can be made again from its type
+ */
+class PieceGeneratorTest {
+
+	/**
+	 * The number of pieces drawn from each generator
+	 */
+	private static final int DRAWS = 1000;
+
+	/**
+	 * Only dots and lines, three dots for each line
+	 */
+	private static int[] weights() {
+		int[] weights = new int[GamePiece.PIECES];
+		weights[0] = 1;
+		weights[3] = 3;
+		return weights;
+	}
+
+	private static List<PieceGenerator> generators(long seed) {
+		return List.of(PieceGenerator.uniform(seed), PieceGenerator.bag(seed), PieceGenerator.weighted(seed, weights()));
+	}
+
+	private static int[] draw(PieceGenerator generator) {
+		int[] pieces = new int[DRAWS];
+		for (var i = 0; i < DRAWS; i++) pieces[i] = generator.next();
+		return pieces;
+	}
+
+	@Test
+	void theSameSeedDealsTheSamePieces() {
+		var first = generators(1234);
+		var second = generators(1234);
+
+		for (var i = 0; i < first.size(); i++) {
+			assertArrayEquals(draw(first.get(i)), draw(second.get(i)), first.get(i).getType());
+		}
+	}
+
+	@Test
+	void anotherSeedDealsOtherPieces() {
+		var first = generators(1);
+		var second = generators(2);
+
+		for (var i = 0; i < first.size(); i++) {
+			assertFalse(Arrays.equals(draw(first.get(i)), draw(second.get(i))), first.get(i).getType());
+		}
+	}
+
+	@Test
+	void createMakesTheSameGeneratorFromItsType() {
+		for (var generator : generators(99)) {
+			var again = PieceGenerator.create(generator.getType(), generator.getSeed());
+
+			assertEquals(generator.getType(), again.getType());
+			assertEquals(99, again.getSeed());
+			assertArrayEquals(draw(generator), draw(again), generator.getType());
+		}
+	}
+
+	@Test
+	void everyPieceIsAValidNumber() {
+		for (var generator : generators(5)) {
+			for (var piece : draw(generator)) {
+				assertTrue(piece >= 0 && piece < GamePiece.PIECES, generator.getType() + " dealt " + piece);
+			}
+		}
+	}
+
+	@Test
+	void aBagDealsEveryPieceOnceBeforeRefilling() {
+		var generator = PieceGenerator.bag(7);
+
+		for (var bag = 0; bag < 10; bag++) {
+			int[] pieces = new int[GamePiece.PIECES];
+			for (var i = 0; i < pieces.length; i++) pieces[i] = generator.next();
+
+			Arrays.sort(pieces);
+			for (var i = 0; i < pieces.length; i++) assertEquals(i, pieces[i], "bag " + bag);
+		}
+	}
+
+	@Test
+	void weightedOnlyDealsPiecesWithAWeight() {
+		int[] counts = new int[GamePiece.PIECES];
+		for (var piece : draw(PieceGenerator.weighted(3, weights()))) counts[piece]++;
+
+		assertEquals(DRAWS, counts[0] + counts[3]);
+		assertTrue(counts[3] > counts[0] * 2, "dots " + counts[3] + ", lines " + counts[0]);
+	}
+
+	@Test
+	void badTypesAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> PieceGenerator.create("shuffled", 1));
+		assertThrows(IllegalArgumentException.class, () -> PieceGenerator.create("weighted", 1));
+		assertThrows(IllegalArgumentException.class, () -> PieceGenerator.create("weighted:1,2,x", 1));
+		assertThrows(IllegalArgumentException.class, () -> PieceGenerator.create("weighted:1,2", 1));
+		assertThrows(IllegalArgumentException.class, () -> PieceGenerator.weighted(1, new int[GamePiece.PIECES]));
+	}
+}
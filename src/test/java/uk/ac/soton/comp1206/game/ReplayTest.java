@@ -0,0 +1,116 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Records headless games with a ReplayRecorder and plays them back with a ReplayPlayer
+ */
+class ReplayTest {
+
+	/**
+	 * Play a game to the end with random bot moves, swaps and timeouts
+	 * @param generator the piece generator
+	 * @param seed the seed for the moves
+	 * @return the replay
+	 */
+	private static byte[] record(PieceGenerator generator, long seed) {
+		var clock = new VirtualClock();
+		var game = new Game(5, 5, Runnable::run, (update) -> { }, clock);
+		var replay = new byte[1][];
+
+		game.setPieceGenerator(generator);
+		game.setRecorder(new ReplayRecorder((bytes) -> replay[0] = bytes));
+		game.start();
+
+		var random = new Random(seed);
+		while (replay[0] == null) {
+			clock.advance(random.nextInt(15000));
+			game.submit(random.nextInt(4) == 0 ? GameCommand.swap() : GameCommand.bot());
+		}
+		return replay[0];
+	}
+
+	@Test
+	void headerRoundTrips() {
+		var replay = new Replay(record(PieceGenerator.bag(-42), 1));
+
+		assertEquals(ReplayRecorder.CLIENT_VERSION, replay.getClientVersion());
+		assertEquals("challenge", replay.getMode());
+		assertEquals("bag", replay.getGeneratorType());
+		assertEquals(-42L, replay.getSeed());
+		assertEquals(5, replay.getCols());
+		assertEquals(5, replay.getRows());
+		assertTrue(replay.isPlayable());
+		assertTrue(replay.isFinished());
+	}
+
+	@Test
+	void replaysEndWhereTheGameDid() {
+		for (long seed = 0; seed < 50; seed++) {
+			var result = ReplayPlayer.verify(record(PieceGenerator.uniform(seed), seed));
+			assertTrue(result.matches(), "seed " + seed + ": " + result);
+		}
+	}
+
+	@Test
+	void weightedGamesReplayWithTheirWeights() {
+		int[] weights = new int[GamePiece.PIECES];
+		for (int i = 0; i < weights.length; i++) weights[i] = i + 1;
+
+		var result = ReplayPlayer.verify(record(PieceGenerator.weighted(7, weights), 7));
+		assertTrue(result.matches(), result.toString());
+	}
+
+	@Test
+	void aChangedScoreIsCaught() {
+		var bytes = record(PieceGenerator.uniform(3), 3);
+		var replay = new Replay(bytes);
+		int end = replay.size() - 1;
+		long delay = replay.getDelay(end);
+		int score = replay.getArg(end, 0);
+		int level = replay.getArg(end, 1);
+
+		//Write the END event again with a different score
+		var tampered = new ByteArrayOutputStream();
+		int endLength = 1 + varint(delay).length + varint(score).length + varint(level).length;
+		tampered.write(bytes, 0, bytes.length - endLength);
+		tampered.write(ReplayRecorder.END);
+		tampered.writeBytes(varint(delay));
+		tampered.writeBytes(varint(score + 10));
+		tampered.writeBytes(varint(level));
+
+		var result = ReplayPlayer.verify(tampered.toByteArray());
+		assertFalse(result.matches());
+		assertEquals(score, result.getScore());
+	}
+
+	/**
+	 * Encode a number the way ReplayRecorder does
+	 */
+	private static byte[] varint(long value) {
+		var out = new ByteArrayOutputStream();
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+		return out.toByteArray();
+	}
+
+	@Test
+	void aCutShortReplayIsRejected() {
+		var bytes = record(PieceGenerator.uniform(4), 4);
+
+		assertThrows(IllegalArgumentException.class, () -> new Replay(Arrays.copyOf(bytes, bytes.length - 1)));
+		assertThrows(IllegalArgumentException.class, () -> new Replay(new byte[] {1, 2, 3}));
+	}
+}
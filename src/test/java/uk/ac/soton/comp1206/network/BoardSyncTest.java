@@ -0,0 +1,132 @@
+package uk.ac.soton.comp1206.network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Encodes boards as the multiplayer game does and decodes them as the other players do
+ */
+class BoardSyncTest {
+
+	private final Grid grid = new Grid(5, 5);
+
+	private final BoardSync sync = new BoardSync(5, 5);
+
+	/**
+	 * The board as the other players see it
+	 */
+	private final int[][] seen = new int[5][5];
+
+	/**
+	 * Encode the grid with deltas and decode it onto the seen board
+	 * @return the payload, or null if nothing was sent
+	 */
+	private String send() {
+		var payload = sync.encode(grid, true);
+		if (payload != null) assertTrue(BoardSync.decode(payload, seen, true));
+		return payload;
+	}
+
+	private static boolean isDelta(String payload) {
+		return payload.startsWith("~");
+	}
+
+	@Test
+	void theFirstMessageIsAKeyframe() {
+		grid.set(1, 2, 4);
+		var payload = send();
+
+		assertFalse(isDelta(payload));
+		assertArrayEquals(grid.copyCells(), seen);
+	}
+
+	@Test
+	void onlyChangedCellsAreSentBetweenKeyframes() {
+		send();
+
+		grid.set(3, 4, 7);
+		assertEquals("~ 3,4,7", send());
+		assertArrayEquals(grid.copyCells(), seen);
+	}
+
+	@Test
+	void nothingIsSentWhenNothingChanged() {
+		send();
+		assertNull(send());
+	}
+
+	@Test
+	void aClearedLineIsOneToken() {
+		for (var y = 0; y < 5; y++) grid.set(2, y, 1);
+		send();
+
+		for (var y = 0; y < 5; y++) grid.set(2, y, 0);
+		assertEquals("~ r2", send());
+		assertArrayEquals(grid.copyCells(), seen);
+	}
+
+	@Test
+	void aKeyframeIsSentEveryInterval() {
+		send();
+
+		for (var i = 1; i < BoardSync.KEYFRAME_INTERVAL; i++) {
+			grid.set(i % 5, 0, i);
+			assertTrue(isDelta(send()), "message " + i);
+		}
+
+		grid.set(0, 1, 1);
+		assertFalse(isDelta(send()));
+	}
+
+	@Test
+	void withoutDeltasEveryMessageIsAKeyframe() {
+		for (var i = 0; i < 3; i++) {
+			grid.set(i, i, 1);
+			var payload = sync.encode(grid, false);
+
+			assertFalse(isDelta(payload));
+			assertTrue(BoardSync.decode(payload, seen, false));
+		}
+		assertArrayEquals(grid.copyCells(), seen);
+		assertNull(sync.encode(grid, false));
+	}
+
+	@Test
+	void aDeltaIsIgnoredBeforeAKeyframe() {
+		var board = new int[5][5];
+
+		assertFalse(BoardSync.decode("~ 1,1,5", board, false));
+		assertArrayEquals(new int[5][5], board);
+	}
+
+	@Test
+	void randomPlayStaysInSync() {
+		var random = new SplittableRandom(42);
+
+		for (var i = 0; i < 500; i++) {
+			if (random.nextInt(4) == 0) {
+				//Clear a whole line, as placing a piece can
+				int line = random.nextInt(5);
+				boolean column = random.nextBoolean();
+				for (var j = 0; j < 5; j++) {
+					if (column) grid.set(line, j, 0);
+					else grid.set(j, line, 0);
+				}
+			} else {
+				grid.set(random.nextInt(5), random.nextInt(5), random.nextInt(1, 16));
+			}
+
+			send();
+			assertArrayEquals(grid.copyCells(), seen, "message " + i);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package uk.ac.soton.comp1206.utility;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.ac.soton.comp1206.game.GameResult;
+
+/**
+ * Writes games to a GameHistory in a temporary folder and checks the indexes, before and after reopening
+ */
+class GameHistoryTest {
+
+    @TempDir
+    Path folder;
+
+    private Path file() {
+        return folder.resolve("history.dat");
+    }
+
+    private static GameResult game(int score, String mode) {
+        return new GameResult(score, score / 1000, 1, 20, 4, 60000, mode, 42, 1600000000000L);
+    }
+
+    @Test
+    void gamesAreIndexedByPlayerAndMode() throws IOException {
+        var history = new GameHistory(file());
+        history.add("alice", game(100, "challenge"));
+        history.add("bob", game(300, "challenge"));
+        history.add("alice", game(500, "multiplayer"));
+
+        assertEquals(3, history.size());
+        assertEquals(2, history.getPlayerStats("alice").getGames());
+        assertEquals(500, history.getPlayerStats("alice").getBest());
+        assertEquals(300.0, history.getPlayerStats("alice").getMean(), 1e-9);
+        assertEquals(2, history.getModeStats("challenge").getGames());
+        assertEquals(300, history.getModeStats("challenge").getBest());
+        assertEquals(500, history.getStats().getBest());
+    }
+
+    @Test
+    void unknownPlayersAndModesHaveNoGames() throws IOException {
+        var history = new GameHistory(file());
+        history.add("alice", game(100, "challenge"));
+
+        assertEquals(0, history.getPlayerStats("nobody").getGames());
+        assertEquals(0, history.getPlayerStats("nobody").getBest());
+        assertEquals(100, history.getModeStats("challenge").getPercentile(50));
+        assertEquals(0, history.getModeStats("weighted").getPercentile(90));
+    }
+
+    @Test
+    void percentilesAreByNearestRank() throws IOException {
+        var history = new GameHistory(file());
+
+        //Added out of order, the index keeps them sorted
+        for (var score : new int[] {70, 10, 100, 40, 20, 90, 30, 60, 80, 50}) {
+            history.add("alice", game(score, "challenge"));
+        }
+
+        var stats = history.getStats();
+        assertEquals(10, stats.getPercentile(0));
+        assertEquals(10, stats.getPercentile(10));
+        assertEquals(20, stats.getPercentile(11));
+        assertEquals(50, stats.getPercentile(50));
+        assertEquals(90, stats.getPercentile(90));
+        assertEquals(100, stats.getPercentile(100));
+        assertEquals(55.0, stats.getMean(), 1e-9);
+    }
+
+    @Test
+    void reopeningRebuildsTheIndexes() throws IOException {
+        var history = new GameHistory(file());
+        history.add("alice", game(100, "challenge"));
+        history.add("bob", game(300, "multiplayer"));
+        history.add("alice", game(200, "challenge"));
+
+        var reopened = new GameHistory(file());
+        assertEquals(3, reopened.size());
+        assertEquals(2, reopened.getPlayerStats("alice").getGames());
+        assertEquals(300, reopened.getPlayerStats("bob").getBest());
+        assertEquals(1, reopened.getModeStats("multiplayer").getGames());
+
+        //New names still get their own numbers after a reopen
+        reopened.add("carol", game(400, "weighted"));
+        var again = new GameHistory(file());
+        assertEquals(400, again.getPlayerStats("carol").getBest());
+        assertEquals(1, again.getModeStats("weighted").getGames());
+        assertEquals(2, again.getPlayerStats("alice").getGames());
+    }
+
+    @Test
+    void aLineBreakInANameDoesNotShiftTheOthers() throws IOException {
+        var history = new GameHistory(file());
+        history.add("two\nlines", game(100, "challenge"));
+        history.add("bob", game(300, "challenge"));
+
+        var reopened = new GameHistory(file());
+        assertEquals(100, reopened.getPlayerStats("two lines").getBest());
+        assertEquals(300, reopened.getPlayerStats("bob").getBest());
+    }
+
+    @Test
+    void aTornTailIsDropped() throws IOException {
+        var history = new GameHistory(file());
+        history.add("alice", game(100, "challenge"));
+        history.add("alice", game(200, "challenge"));
+        history.add("alice", game(300, "challenge"));
+        long record = Files.size(file()) / 3;
+
+        //Half of the last record is lost, as if the game was killed while writing it
+        try (var channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            channel.truncate(record * 2 + record / 2);
+        }
+
+        var reopened = new GameHistory(file());
+        assertEquals(2, reopened.size());
+        assertEquals(200, reopened.getPlayerStats("alice").getBest());
+        assertEquals(record * 2, Files.size(file()));
+
+        //The next game goes where the torn one was
+        reopened.add("alice", game(400, "challenge"));
+        assertEquals(3, new GameHistory(file()).size());
+    }
+
+    @Test
+    void aDamagedRecordEndsTheHistory() throws IOException {
+        var history = new GameHistory(file());
+        history.add("alice", game(100, "challenge"));
+        history.add("alice", game(200, "challenge"));
+        history.add("alice", game(300, "challenge"));
+        long record = Files.size(file()) / 3;
+
+        var bytes = Files.readAllBytes(file());
+        //Flip a bit of the second score, which its CRC no longer matches
+        bytes[(int) record + 21] ^= 1;
+        Files.write(file(), bytes);
+
+        var reopened = new GameHistory(file());
+        assertEquals(1, reopened.size());
+        assertEquals(100, reopened.getStats().getBest());
+        assertEquals(record, Files.size(file()));
+    }
+}
@@ -0,0 +1,95 @@
+package uk.ac.soton.comp1206.utility;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the bucket each value is counted in against the value, through the percentiles
+ */
+class LatencyHistogramTest {
+
+	private final LatencyHistogram histogram = new LatencyHistogram("ms");
+
+	/**
+	 * Get the highest value of the bucket a value is counted in. A larger value is recorded too, so the answer is not
+	 * capped at the maximum.
+	 */
+	private static long bucketOf(long value) {
+		var histogram = new LatencyHistogram("ms");
+		histogram.record(value);
+		histogram.record(Long.MAX_VALUE);
+		return histogram.getValueAtPercentile(50);
+	}
+
+	@Test
+	void smallValuesAreExact() {
+		for (var value = 0; value < 64; value++) assertEquals(value, bucketOf(value));
+	}
+
+	@Test
+	void bucketsAtAPowerOfTwoHoldTwoValues() {
+		assertEquals(65, bucketOf(64));
+		assertEquals(65, bucketOf(65));
+		assertEquals(67, bucketOf(66));
+		assertEquals(131, bucketOf(128));
+		assertEquals(131, bucketOf(131));
+	}
+
+	@Test
+	void everyValueIsKeptWithinAThirtySecond() {
+		var random = new SplittableRandom(11);
+
+		for (var i = 0; i < 10000; i++) {
+			long value = random.nextLong(1L << random.nextInt(1, 62));
+			long bucket = bucketOf(value);
+
+			assertTrue(bucket >= value, value + " counted as " + bucket);
+			assertTrue(bucket - value <= value / 32, value + " counted as " + bucket);
+		}
+	}
+
+	@Test
+	void theLargestValueHasABucket() {
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+		assertEquals(Long.MAX_VALUE, histogram.getMax());
+	}
+
+	@Test
+	void percentilesAreByRankAndCappedAtTheMax() {
+		for (var value = 1; value <= 100; value++) histogram.record(value);
+
+		assertEquals(1, histogram.getValueAtPercentile(0));
+		assertEquals(50, histogram.getValueAtPercentile(50));
+		assertEquals(99, histogram.getValueAtPercentile(99));
+		assertEquals(100, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	void countMaxAndMeanFollowTheValues() {
+		histogram.record(10);
+		histogram.record(30);
+		histogram.record(-5);
+
+		assertEquals(3, histogram.getCount());
+		assertEquals(30, histogram.getMax());
+		assertEquals(40.0 / 3, histogram.getMean(), 1e-9);
+		assertEquals(0, histogram.getValueAtPercentile(1));
+	}
+
+	@Test
+	void resetEmptiesTheHistogram() {
+		histogram.record(1000);
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0.0, histogram.getMean(), 1e-9);
+		assertEquals(0, histogram.getValueAtPercentile(50));
+	}
+}
@@ -0,0 +1,126 @@
+package uk.ac.soton.comp1206.utility;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the board against sorting every score offered
+ */
+class LeaderboardTest {
+
+    private static List<String> texts(Leaderboard board) {
+        var texts = new ArrayList<String>();
+        for (var entry : board.entries()) texts.add(entry.getText());
+        return texts;
+    }
+
+    @Test
+    void entriesAreBestFirst() {
+        var board = new Leaderboard(5);
+        board.add("a", 30);
+        board.add("b", 50);
+        board.add("c", 10);
+        board.add("d", 40);
+
+        assertEquals(List.of("b: 50", "d: 40", "a: 30", "c: 10"), texts(board));
+        assertEquals(10, board.getLowest());
+    }
+
+    @Test
+    void onlyTheBestAreKept() {
+        var board = new Leaderboard(3);
+        for (var score = 1; score <= 10; score++) board.add("p" + score, score);
+
+        assertEquals(List.of("p10: 10", "p9: 9", "p8: 8"), texts(board));
+        assertEquals(3, board.size());
+        assertEquals(8, board.getLowest());
+    }
+
+    @Test
+    void equalScoresRankInTheOrderOffered() {
+        var board = new Leaderboard(5);
+        board.add("first", 20);
+        board.add("second", 20);
+        board.add("best", 30);
+        board.add("third", 20);
+
+        assertEquals(List.of("best: 30", "first: 20", "second: 20", "third: 20"), texts(board));
+    }
+
+    @Test
+    void aTieWithTheLowestDoesNotMakeAFullBoard() {
+        var board = new Leaderboard(2);
+        assertTrue(board.add("a", 20));
+        assertTrue(board.add("b", 10));
+
+        assertFalse(board.add("late", 10));
+        assertEquals(List.of("a: 20", "b: 10"), texts(board));
+    }
+
+    @Test
+    void theLaterOfEqualScoresIsDroppedFirst() {
+        var board = new Leaderboard(3);
+        board.add("early", 10);
+        board.add("late", 10);
+        board.add("top", 50);
+
+        assertTrue(board.add("new", 20));
+        assertEquals(List.of("top: 50", "new: 20", "early: 10"), texts(board));
+    }
+
+    @Test
+    void entriesAreReusedUntilTheBoardChanges() {
+        var board = new Leaderboard(2);
+        board.add("a", 10);
+        var entries = board.entries();
+        assertSame(entries, board.entries());
+
+        board.add("b", 20);
+        var changed = board.entries();
+        assertEquals(List.of("b: 20", "a: 10"), texts(board));
+
+        //Turned away, so the board is the same
+        board.add("c", 5);
+        assertSame(changed, board.entries());
+    }
+
+    @Test
+    void clearEmptiesTheBoard() {
+        var board = new Leaderboard(3);
+        board.add("a", 10);
+        board.clear();
+
+        assertEquals(0, board.size());
+        assertEquals(0, board.getLowest());
+        assertTrue(board.entries().isEmpty());
+    }
+
+    @Test
+    void matchesSortingEveryScore() {
+        var random = new SplittableRandom(7);
+        var board = new Leaderboard(10);
+        var all = new ArrayList<int[]>();
+
+        for (var i = 0; i < 2000; i++) {
+            int score = random.nextInt(200);
+            board.add("p" + i, score);
+            all.add(new int[] {score, i});
+        }
+
+        //Best score first, then first offered
+        all.sort(Comparator.<int[]>comparingInt((entry) -> -entry[0]).thenComparingInt((entry) -> entry[1]));
+        var expected = new ArrayList<String>();
+        for (var entry : all.subList(0, 10)) expected.add("p" + entry[1] + ": " + entry[0]);
+
+        assertEquals(expected, texts(board));
+    }
+}
@@ -0,0 +1,90 @@
+package uk.ac.soton.comp1206.utility;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javafx.util.Pair;
+
+/**
+ * Writes scores to a ScoreStore in a temporary folder and reads them back
+ */
+class ScoreStoreTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Open the store, starting it empty by importing an empty legacy file if there is no legacy file yet
+     */
+    private ScoreStore open() throws IOException {
+        var legacy = folder.resolve("localScores.txt");
+        if (!Files.exists(legacy)) Files.createFile(legacy);
+        return new ScoreStore(folder.resolve("scores.dat"), legacy);
+    }
+
+    @Test
+    void aNewStoreStartsWithTheDefaultScores() throws IOException {
+        var store = new ScoreStore(folder.resolve("scores.dat"), null);
+
+        assertEquals(ScoreStore.TOP, store.getTop().size());
+        assertEquals(new Pair<>("test", 10000), store.getTop().get(0));
+    }
+
+    @Test
+    void scoresSurviveReopening() throws IOException {
+        var store = open();
+        store.append("alice", 300);
+        store.append("bob", 500);
+        store.append("carol", 100);
+
+        var reopened = open();
+        assertEquals(List.of(new Pair<>("bob", 500), new Pair<>("alice", 300), new Pair<>("carol", 100)),
+                reopened.getTop());
+        assertEquals(3, reopened.readAll().size());
+    }
+
+    @Test
+    void onlyTheBestAreKeptOnTop() throws IOException {
+        var store = open();
+        for (int i = 0; i < ScoreStore.TOP * 2; i++) store.append("player" + i, i);
+
+        var top = open().getTop();
+        assertEquals(ScoreStore.TOP, top.size());
+        assertEquals(ScoreStore.TOP * 2 - 1, (int) top.get(0).getValue());
+        assertEquals(ScoreStore.TOP, (int) top.get(ScoreStore.TOP - 1).getValue());
+    }
+
+    @Test
+    void aTornTailIsDropped() throws IOException {
+        var store = open();
+        store.append("alice", 300);
+        store.append("bob", 500);
+
+        //Half a record, as if the game died while writing
+        Files.write(folder.resolve("scores.dat"), new byte[] {5, 'd', 'a'}, StandardOpenOption.APPEND);
+
+        var reopened = open();
+        assertEquals(2, reopened.readAll().size());
+
+        //and appending after it still works
+        reopened.append("carol", 700);
+        assertEquals(new Pair<>("carol", 700), open().getTop().get(0));
+    }
+
+    @Test
+    void legacyScoresAreImportedOnce() throws IOException {
+        Files.writeString(folder.resolve("localScores.txt"), "alice:300\nbob:500\n");
+
+        assertEquals(2, open().readAll().size());
+        assertEquals(2, open().readAll().size());
+        assertEquals(new Pair<>("bob", 500), open().getTop().get(0));
+    }
+}